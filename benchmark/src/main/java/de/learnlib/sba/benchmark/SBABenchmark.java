@@ -17,13 +17,14 @@ package de.learnlib.sba.benchmark;
 import de.learnlib.sba.api.LearnerProvider;
 import de.learnlib.sba.api.ProceduralLearner;
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.CompiledStackSBA;
 import de.learnlib.sba.impl.SymbolWrapper;
 import de.learnlib.sba.learner.SBALearner;
+import de.learnlib.sba.util.SBASimulatorOracle;
 import de.learnlib.sba.util.SimulatorEQOracle;
 import de.learnlib.api.algorithm.LearningAlgorithm;
 import de.learnlib.api.oracle.EquivalenceOracle;
 import de.learnlib.api.oracle.MembershipOracle;
-import de.learnlib.oracle.membership.SimulatorOracle;
 import net.automatalib.words.SPAAlphabet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,7 +57,7 @@ public class SBABenchmark<I, L extends ProceduralLearner<SymbolWrapper<I>>> exte
     @Override
     public void run() {
         try {
-            final MembershipOracle<I, Boolean> mqo = new SimulatorOracle<>(sba);
+            final MembershipOracle<I, Boolean> mqo = new SBASimulatorOracle<>(new CompiledStackSBA<>(sba));
             final EquivalenceOracle<SBA<?, I>, I, Boolean> eqo = new SimulatorEQOracle<>(sba);
 
             super.runExperiment(this.alphabet, mqo, eqo);
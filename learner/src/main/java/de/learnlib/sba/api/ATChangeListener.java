@@ -0,0 +1,39 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.api;
+
+import java.util.Set;
+
+/**
+ * A listener that is notified whenever the sequences of an {@link ATProvider} change.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+@FunctionalInterface
+public interface ATChangeListener<I> {
+
+    /**
+     * Called after a new version of the sequences has been published.
+     *
+     * @param version
+     *         the new version (see {@link ATProvider#getVersion()})
+     * @param accessSequences
+     *         the procedures whose access sequences have been added or changed
+     * @param terminatingSequences
+     *         the procedures whose terminating sequences have been added or changed
+     */
+    void sequencesChanged(long version, Set<I> accessSequences, Set<I> terminatingSequences);
+}
@@ -26,14 +26,63 @@ import net.automatalib.words.Word;
 
 public interface ATProvider<I> {
 
+    /**
+     * The {@link #getVersion() version} of providers that do not track changes of their sequences.
+     */
+    long UNVERSIONED = -1;
+
     Word<I> getAccessSequence(I procedure);
 
     Word<I> getTerminatingSequence(I procedure);
 
     boolean hasTerminatingSequence(I procedure);
 
+    /**
+     * Returns whether this provider has an access sequence for the given procedure.
+     * <p>
+     * The default implementation returns {@code false}, so wrapping providers (e.g. {@link
+     * de.learnlib.sba.impl.SnapshotATProvider}) only take over the access sequences of providers that override this
+     * method. All providers of this library override it.
+     *
+     * @param procedure
+     *         the procedure
+     *
+     * @return {@code true} if this provider has an access sequence for the given procedure, {@code false} otherwise
+     */
+    default boolean hasAccessSequence(I procedure) {
+        return false;
+    }
+
+    /**
+     * Returns the current version of the sequences of this provider. The version changes whenever an access sequence
+     * or a terminating sequence changes, so that derived data (e.g. expanded queries) only needs to be re-computed if
+     * the version differs from the one it has been computed for.
+     * <p>
+     * The default implementation returns {@link #UNVERSIONED}. Caches keyed on the version cannot be invalidated for
+     * providers that keep this default, so consumers re-validate their derived data on every access instead. Providers
+     * should override this method with a (non-negative) version that is incremented on every change.
+     *
+     * @return the current version, or {@link #UNVERSIONED} if this provider does not track changes
+     */
+    default long getVersion() {
+        return UNVERSIONED;
+    }
+
     Pair<Set<I>, Set<I>> scanPositiveCounterexample(Word<I> counterexample);
 
+    /**
+     * Variant of {@link #scanPositiveCounterexample(Word)} that re-uses an already computed {@link NestedWordIndex} of
+     * the counterexample.
+     *
+     * @param counterexample
+     *         the index of the (positive) counterexample
+     *
+     * @return the procedures for which new access sequences and new terminating sequences have been found
+     */
+    default Pair<Set<I>, Set<I>> scanPositiveCounterexample(NestedWordIndex<I> counterexample) {
+        return scanPositiveCounterexample(counterexample.getWord());
+    }
+
     Set<I> scanRefinedProcedures(Map<I, ? extends DFA<?, SymbolWrapper<I>>> procedures,
                                  Map<I, ? extends AccessSequenceTransformer<SymbolWrapper<I>>> providers,
                                  Collection<SymbolWrapper<I>> inputs);
@@ -0,0 +1,81 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.api;
+
+import net.automatalib.words.SPAAlphabet;
+
+/**
+ * A default {@link SBARunner} that falls back to the {@link SBA#getTransition(Object, Object) transition function} of
+ * the given {@link SBA}. The stack depth is tracked based on the types of the read symbols.
+ *
+ * @param <S>
+ *         state type
+ * @param <I>
+ *         input symbol type
+ */
+public class DefaultSBARunner<S, I> implements SBARunner<I> {
+
+    private final SBA<S, I> sba;
+    private final SPAAlphabet<I> alphabet;
+
+    private S state;
+    private int depth;
+
+    public DefaultSBARunner(SBA<S, I> sba) {
+        this.sba = sba;
+        this.alphabet = sba.getInputAlphabet();
+        this.reset();
+    }
+
+    @Override
+    public boolean step(I input) {
+        if (state != null) {
+            state = sba.getSuccessor(state, input);
+
+            if (alphabet.isCallSymbol(input)) {
+                depth++;
+            } else if (alphabet.isReturnSymbol(input) && depth > 0) {
+                depth--;
+            }
+        }
+
+        return isAccepting();
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return state != null && sba.isAccepting(state);
+    }
+
+    @Override
+    public int depth() {
+        return depth;
+    }
+
+    @Override
+    public void reset() {
+        this.state = sba.getInitialState();
+        this.depth = 0;
+    }
+
+    @Override
+    public SBARunner<I> fork() {
+        // states of an SBA are immutable and can be shared
+        final DefaultSBARunner<S, I> copy = new DefaultSBARunner<>(sba);
+        copy.state = this.state;
+        copy.depth = this.depth;
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.api;
+
+/**
+ * A strategy for locating the mismatch of a counterexample, i.e. for determining the longest prefix of a word that is
+ * still accepted by a (prefix-closed) system. Since the language of an {@link SBA} is prefix-closed, acceptance is
+ * monotone with respect to the prefix length, which allows for various search strategies (linear, exponential, binary,
+ * ...) that differ in the number and the sequential dependency of the queries they pose.
+ */
+public interface MismatchAnalyzer {
+
+    /**
+     * Determines the length of the longest accepted prefix.
+     *
+     * @param oracle
+     *         the oracle for answering whether a prefix of a given length is accepted
+     * @param lower
+     *         a prefix length that is known to be accepted
+     * @param upper
+     *         a prefix length that is known to be rejected
+     *
+     * @return the length {@code l} with {@code lower <= l < upper}, such that the prefix of length {@code l} is accepted
+     * and the prefix of length {@code l + 1} is rejected
+     */
+    int analyze(PrefixOracle oracle, int lower, int upper);
+
+    /**
+     * An oracle for answering whether the prefix of a fixed word with a given length is accepted.
+     */
+    interface PrefixOracle {
+
+        /**
+         * Returns whether the prefix with the given length is accepted.
+         *
+         * @param length
+         *         the length of the prefix
+         *
+         * @return {@code true} if the prefix is accepted, {@code false} otherwise
+         */
+        boolean accepts(int length);
+
+        /**
+         * Batch version of {@link #accepts(int)} which allows implementations to answer the given prefixes in parallel.
+         *
+         * @param lengths
+         *         the lengths of the prefixes
+         *
+         * @return an array containing at each index whether the prefix of the corresponding length is accepted
+         */
+        default boolean[] accepts(int[] lengths) {
+            final boolean[] result = new boolean[lengths.length];
+
+            for (int i = 0; i < lengths.length; i++) {
+                result[i] = accepts(lengths[i]);
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.api;
+
+import java.util.Arrays;
+
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * An index over the call/return structure of a word. The index is computed with a single pass over the word and
+ * afterwards answers the queries of {@link SPAAlphabet#findCallIndex(Word, int)}, {@link
+ * SPAAlphabet#findReturnIndex(Word, int)} (for call symbols), and {@link SPAAlphabet#normalize(Word, int)} without
+ * re-scanning the word.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public final class NestedWordIndex<I> {
+
+    private static final int NONE = -1;
+
+    private final Word<I> word;
+
+    // for call symbols the index of the matching return symbol, for return symbols the index of the matching call
+    private final int[] matches;
+    // the innermost open call before each position (including the position after the last symbol)
+    private final int[] enclosingCalls;
+    private final int[] depths;
+
+    public NestedWordIndex(SPAAlphabet<I> alphabet, Word<I> word) {
+        final int length = word.length();
+
+        this.word = word;
+        this.matches = new int[length];
+        this.enclosingCalls = new int[length + 1];
+        this.depths = new int[length + 1];
+
+        Arrays.fill(this.matches, NONE);
+
+        final int[] stack = new int[length];
+        int top = 0;
+        int idx = 0;
+
+        for (I sym : word) {
+            this.enclosingCalls[idx] = top > 0 ? stack[top - 1] : NONE;
+            this.depths[idx] = top;
+
+            if (alphabet.isCallSymbol(sym)) {
+                stack[top++] = idx;
+            } else if (alphabet.isReturnSymbol(sym) && top > 0) {
+                final int call = stack[--top];
+                this.matches[call] = idx;
+                this.matches[idx] = call;
+            }
+
+            idx++;
+        }
+
+        this.enclosingCalls[length] = top > 0 ? stack[top - 1] : NONE;
+        this.depths[length] = top;
+    }
+
+    /**
+     * Returns the indexed word.
+     *
+     * @return the indexed word
+     */
+    public Word<I> getWord() {
+        return this.word;
+    }
+
+    /**
+     * Returns the index of the return symbol matching the call symbol at the given index. Equivalent to {@code
+     * alphabet.findReturnIndex(word, callIdx + 1)}.
+     *
+     * @param callIdx
+     *         the index of a call symbol
+     *
+     * @return the index of the matching return symbol, or {@code -1} if the call is pending
+     */
+    public int getMatchingReturn(int callIdx) {
+        return this.matches[callIdx];
+    }
+
+    /**
+     * Returns the index of the call symbol matching the return symbol at the given index.
+     *
+     * @param returnIdx
+     *         the index of a return symbol
+     *
+     * @return the index of the matching call symbol, or {@code -1} if the return is unmatched
+     */
+    public int getMatchingCall(int returnIdx) {
+        return this.matches[returnIdx];
+    }
+
+    /**
+     * Returns the index of the innermost call symbol that is still open at the given position. Equivalent to {@code
+     * alphabet.findCallIndex(word, idx)}.
+     *
+     * @param idx
+     *         the position, may be equal to the length of the word
+     *
+     * @return the index of the enclosing call symbol, or {@code -1} if the position is not nested in any call
+     */
+    public int getEnclosingCall(int idx) {
+        return this.enclosingCalls[idx];
+    }
+
+    /**
+     * Returns the number of open calls at the given position.
+     *
+     * @param idx
+     *         the position, may be equal to the length of the word
+     *
+     * @return the nesting depth
+     */
+    public int getDepth(int idx) {
+        return this.depths[idx];
+    }
+
+    /**
+     * Returns the sub word between the given indices, in which every call that returns within the sub word is
+     * replaced by its call symbol. Equivalent to {@code alphabet.normalize(word.subWord(fromIndex, toIndex), 0)}.
+     *
+     * @param fromIndex
+     *         the first index (inclusive)
+     * @param toIndex
+     *         the last index (exclusive)
+     *
+     * @return the normalized sub word
+     */
+    @SuppressWarnings("PMD.AvoidReassigningLoopVariables") // we want to skip ahead here
+    public Word<I> getLocalWord(int fromIndex, int toIndex) {
+        final WordBuilder<I> wb = new WordBuilder<>(toIndex - fromIndex);
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            wb.append(word.getSymbol(i));
+
+            final int returnIdx = this.matches[i];
+            if (returnIdx > i && returnIdx < toIndex) {
+                i = returnIdx;
+            }
+        }
+
+        return wb.toWord();
+    }
+}
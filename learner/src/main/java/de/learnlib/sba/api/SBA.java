@@ -78,6 +78,27 @@ public interface SBA<S, I> extends DeterministicAcceptorTS<S, I>,
         return size;
     }
 
+    /**
+     * Returns a new {@link SBARunner} for feeding traces symbol by symbol to this {@link SBA}. The default
+     * implementation falls back to the {@link #getTransition(Object, Object) transition function} of this {@link SBA}.
+     *
+     * @return a new runner, initialized with the configuration for the empty word
+     */
+    default SBARunner<I> createRunner() {
+        return new DefaultSBARunner<>(this);
+    }
+
+    @Override
+    default boolean accepts(Iterable<? extends I> input) {
+        final SBARunner<I> runner = this.createRunner();
+
+        for (I i : input) {
+            runner.step(i);
+        }
+
+        return runner.isAccepting();
+    }
+
     @Override
     default Boolean computeOutput(Iterable<? extends I> input) {
         return this.accepts(input);
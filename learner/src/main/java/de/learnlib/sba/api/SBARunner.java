@@ -0,0 +1,64 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.api;
+
+/**
+ * A mutable cursor for feeding a (potentially long) trace symbol by symbol to an {@link SBA}. In contrast to the
+ * (persistent) states of an {@link SBA}, a runner may re-use its internal data structures across steps and is
+ * therefore not meant to be shared between threads or used for branching explorations.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public interface SBARunner<I> {
+
+    /**
+     * Advances the run by the given input symbol.
+     *
+     * @param input
+     *         the input symbol
+     *
+     * @return {@code true} if the word read so far is accepted, {@code false} otherwise
+     */
+    boolean step(I input);
+
+    /**
+     * Returns whether the word read so far is accepted.
+     *
+     * @return {@code true} if the word read so far is accepted, {@code false} otherwise
+     */
+    boolean isAccepting();
+
+    /**
+     * Returns the current stack depth of the run, i.e. the number of procedures that have been called but not yet
+     * returned from. The value is unspecified once the run has been rejected.
+     *
+     * @return the current stack depth
+     */
+    int depth();
+
+    /**
+     * Resets the run to the initial configuration, i.e. the configuration for the empty word.
+     */
+    void reset();
+
+    /**
+     * Returns an independent copy of this run, i.e. a runner whose configuration equals the current configuration of
+     * this runner. This allows to branch runs (e.g. at the forks of a prefix tree) without re-reading shared prefixes.
+     *
+     * @return a copy of this run
+     */
+    SBARunner<I> fork();
+}
@@ -30,6 +30,17 @@ public class AlphabetMapper<I> implements Mapping<I, SymbolWrapper<I>> {
         this.target = new ArrayStorage<>(source.size());
     }
 
+    /**
+     * Creates a copy of the given mapper. Subsequent modifications of either mapper are not reflected by the other.
+     *
+     * @param other
+     *         the mapper to copy
+     */
+    public AlphabetMapper(AlphabetMapper<I> other) {
+        this.source = other.source;
+        this.target = other.target.clone();
+    }
+
     public void set(I symbol, SymbolWrapper<I> representative) {
         this.target.set(source.getSymbolIndex(symbol), representative);
     }
@@ -0,0 +1,269 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+
+/**
+ * A {@link MembershipOracle} that collects the queries of multiple (concurrent) callers into larger batches before
+ * forwarding them to a delegate oracle. This is useful if multiple procedural learners are refined concurrently and the
+ * delegate oracle has a high per-batch overhead.
+ * <p>
+ * The first caller that contributes to an (open) batch becomes its leader. The leader waits until either the batch has
+ * reached the configured size, all {@link #setParties(int) parties} have contributed to it, or the configured linger
+ * time has passed, and then dispatches the batch. Since there is only a single party by default, batches are
+ * dispatched immediately unless the number of concurrent callers is announced beforehand. Identical words
+ * are only forwarded once. All other contributing callers wait until the leader has answered their queries. If the
+ * delegate oracle throws an exception, it is propagated to all contributing callers.
+ * <p>
+ * The queries of a single caller are never split across batches, i.e. a batch is sealed once it has reached the
+ * configured size, but it may exceed this size by the queries of its last contributor.
+ * <p>
+ * Both the leader and the other callers may be workers of a {@link ForkJoinPool} (e.g. concurrently refined
+ * procedures), so they wait via {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)} in order to let the
+ * pool compensate for the blocked workers.
+ *
+ * @param <I>
+ *         input symbol type
+ * @param <D>
+ *         output domain type
+ */
+public class BatchingMembershipOracle<I, D> implements MembershipOracle<I, D> {
+
+    private final MembershipOracle<I, D> delegate;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    private final Object lock = new Object();
+    private Batch<I, D> openBatch;
+    private int parties;
+
+    public BatchingMembershipOracle(MembershipOracle<I, D> delegate, int batchSize, long lingerMillis) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size needs to be positive");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("The linger time must not be negative");
+        }
+
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.parties = 1;
+    }
+
+    /**
+     * Sets the number of callers that (may) concurrently pose queries to this oracle. A batch is dispatched as soon as
+     * each of these callers has contributed to it, because no further queries can be expected.
+     *
+     * @param parties
+     *         the number of concurrent callers
+     */
+    public void setParties(int parties) {
+        synchronized (lock) {
+            this.parties = Math.max(parties, 1);
+            sealIfComplete();
+        }
+    }
+
+    /**
+     * Decrements the number of concurrent callers, e.g. when one of them has finished. A currently open batch that has
+     * been contributed to by all remaining callers is dispatched immediately.
+     */
+    public void deregister() {
+        synchronized (lock) {
+            this.parties = Math.max(this.parties - 1, 1);
+            sealIfComplete();
+        }
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, D>> queries) {
+        if (queries.isEmpty()) {
+            return;
+        }
+
+        final Batch<I, D> batch;
+        final boolean leader;
+
+        synchronized (lock) {
+            if (openBatch == null) {
+                openBatch = new Batch<>();
+                leader = true;
+            } else {
+                leader = false;
+            }
+
+            batch = openBatch;
+            batch.add(queries);
+            sealIfComplete();
+        }
+
+        if (leader) {
+            awaitSeal(batch);
+            batch.dispatch(delegate);
+        } else {
+            batch.await();
+        }
+    }
+
+    private void sealIfComplete() {
+        assert Thread.holdsLock(lock);
+
+        if (openBatch != null && (openBatch.size >= batchSize || openBatch.callers >= parties)) {
+            seal(openBatch);
+        }
+    }
+
+    private void seal(Batch<I, D> batch) {
+        assert Thread.holdsLock(lock);
+
+        batch.sealed = true;
+        if (openBatch == batch) {
+            openBatch = null;
+        }
+        lock.notifyAll();
+    }
+
+    private void awaitSeal(Batch<I, D> batch) {
+        try {
+            ForkJoinPool.managedBlock(new SealAwaiter(batch, System.nanoTime() + lingerNanos));
+        } catch (InterruptedException ie) {
+            // dispatch the queries collected so far, so that the other callers are not left waiting
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (lock) {
+                seal(batch);
+            }
+        }
+    }
+
+    /**
+     * Blocks the leader of a batch until the batch has been sealed or the linger time has passed.
+     */
+    private final class SealAwaiter implements ForkJoinPool.ManagedBlocker {
+
+        private final Batch<I, D> batch;
+        private final long deadline;
+
+        SealAwaiter(Batch<I, D> batch, long deadline) {
+            this.batch = batch;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (lock) {
+                final long remaining = deadline - System.nanoTime();
+                if (!batch.sealed && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return isReleasableLocked();
+            }
+        }
+
+        @Override
+        public boolean isReleasable() {
+            synchronized (lock) {
+                return isReleasableLocked();
+            }
+        }
+
+        private boolean isReleasableLocked() {
+            return batch.sealed || deadline - System.nanoTime() <= 0;
+        }
+    }
+
+    private static final class Batch<I, D> implements ForkJoinPool.ManagedBlocker {
+
+        // keep insertion order so that the delegate sees the queries in a deterministic order
+        private final Map<Word<I>, List<Query<I, D>>> queries = new LinkedHashMap<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int size;
+        private int callers;
+        private boolean sealed;
+        private volatile RuntimeException failure;
+
+        void add(Collection<? extends Query<I, D>> batch) {
+            for (Query<I, D> q : batch) {
+                queries.computeIfAbsent(q.getInput(), k -> new ArrayList<>(1)).add(q);
+            }
+            size += batch.size();
+            callers++;
+        }
+
+        void dispatch(MembershipOracle<I, D> delegate) {
+            try {
+                final List<DefaultQuery<I, D>> unique = new ArrayList<>(queries.size());
+
+                for (Word<I> w : queries.keySet()) {
+                    unique.add(new DefaultQuery<>(w));
+                }
+
+                delegate.processQueries(unique);
+
+                for (DefaultQuery<I, D> q : unique) {
+                    for (Query<I, D> orig : queries.get(q.getInput())) {
+                        orig.answer(q.getOutput());
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } catch (Error e) {
+                failure = new IllegalStateException(e);
+                throw e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void await() {
+            try {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the batch to be answered", ie);
+            }
+
+            if (failure != null) {
+                throw new IllegalStateException("The batch could not be answered", failure);
+            }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            done.await();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
+import com.google.common.collect.Maps;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+
+/**
+ * A compiled variant of a {@link StackSBA}. All procedures of the given {@link SBA} are flattened into a single integer
+ * transition table (indexed by the global state id and the symbol index of the input alphabet) so that evaluating a
+ * word only operates on a (thread-local, re-usable) primitive stack and does not allocate any objects.
+ * <p>
+ * The step-wise semantics (i.e. {@link #getTransition(StackSBAState, Object)}) are inherited from {@link StackSBA} and
+ * operate on the original procedures. Note that the compiled representation is a snapshot of the procedures at the
+ * time of construction, so subsequent modifications of the procedures are not reflected by {@link #accepts(Iterable)}.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class CompiledStackSBA<I> extends StackSBA<Object, I> {
+
+    private static final int INIT = -1;
+    private static final int SINK = -2;
+    private static final int TERM = -3;
+
+    private final SPAAlphabet<I> alphabet;
+    private final int numSymbols;
+    private final int returnIdx;
+    private final int initialProcedure;
+
+    // call index for each symbol index, or -1 if the symbol is not a call symbol
+    private final int[] callIndices;
+    // global initial state for each call index, or -1 if the procedure does not exist
+    private final int[] initialStates;
+    // global successor for each (global state, symbol index) pair, or -1 if the transition is rejecting
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private final ThreadLocal<Run> run;
+
+    public CompiledStackSBA(SBA<?, I> sba) {
+        this(sba.getInputAlphabet(), sba.getInitialProcedure(), sba.getProcedures());
+    }
+
+    public CompiledStackSBA(SPAAlphabet<I> alphabet, I initialCall, Map<I, ? extends DFA<?, I>> procedures) {
+        super(alphabet, initialCall, procedures);
+
+        this.alphabet = alphabet;
+        this.numSymbols = alphabet.size();
+        this.returnIdx = alphabet.getSymbolIndex(alphabet.getReturnSymbol());
+        this.initialProcedure = initialCall == null ? -1 : alphabet.getCallSymbolIndex(initialCall);
+
+        final int numCalls = alphabet.getNumCalls();
+
+        this.callIndices = new int[numSymbols];
+        Arrays.fill(this.callIndices, -1);
+        for (int i = 0; i < numCalls; i++) {
+            this.callIndices[alphabet.getSymbolIndex(alphabet.getCallSymbol(i))] = i;
+        }
+
+        final int[] offsets = new int[numCalls];
+        int numStates = 0;
+
+        for (int i = 0; i < numCalls; i++) {
+            final DFA<?, I> dfa = procedures.get(alphabet.getCallSymbol(i));
+            offsets[i] = numStates;
+            if (dfa != null) {
+                numStates += dfa.size();
+            }
+        }
+
+        this.initialStates = new int[numCalls];
+        this.transitions = new int[numStates * numSymbols];
+        this.accepting = new boolean[numStates];
+
+        for (int i = 0; i < numCalls; i++) {
+            final DFA<?, I> dfa = procedures.get(alphabet.getCallSymbol(i));
+            if (dfa == null) {
+                this.initialStates[i] = -1;
+            } else {
+                this.initialStates[i] = compileProcedure(dfa, offsets[i]);
+            }
+        }
+
+        this.run = ThreadLocal.withInitial(Run::new);
+    }
+
+    private <S> int compileProcedure(DFA<S, I> dfa, int offset) {
+        final Map<S, Integer> stateIds = Maps.newHashMapWithExpectedSize(dfa.size());
+
+        int id = offset;
+        for (S s : dfa.getStates()) {
+            stateIds.put(s, id);
+            this.accepting[id] = dfa.isAccepting(s);
+            id++;
+        }
+
+        for (Map.Entry<S, Integer> e : stateIds.entrySet()) {
+            final int base = e.getValue() * numSymbols;
+
+            for (int i = 0; i < numSymbols; i++) {
+                final S succ = dfa.getSuccessor(e.getKey(), alphabet.getSymbol(i));
+                // non-accepting successors are treated as undefined transitions, see StackSBA#getTransition
+                if (succ == null || !dfa.isAccepting(succ)) {
+                    this.transitions[base + i] = -1;
+                } else {
+                    this.transitions[base + i] = stateIds.get(succ);
+                }
+            }
+        }
+
+        final S init = dfa.getInitialState();
+        return init == null ? -1 : stateIds.get(init);
+    }
+
+    @Override
+    public SBARunner<I> createRunner() {
+        return new Run();
+    }
+
+    @Override
+    public boolean accepts(Iterable<? extends I> input) {
+        final Run r = this.run.get();
+        r.reset();
+        r.feed(input);
+        return r.isAccepting();
+    }
+
+    @Override
+    public Boolean computeSuffixOutput(Iterable<? extends I> prefix, Iterable<? extends I> suffix) {
+        final Run r = this.run.get();
+        r.reset();
+        r.feed(prefix);
+        r.feed(suffix);
+        return r.isAccepting();
+    }
+
+    /**
+     * The re-usable configuration of a run, i.e. the current (global) state and a primitive stack of (global) return
+     * states.
+     */
+    private final class Run implements SBARunner<I> {
+
+        private int[] stack = new int[16];
+        private int depth;
+        private int current = INIT;
+
+        @Override
+        public void reset() {
+            this.depth = 0;
+            this.current = INIT;
+        }
+
+        void feed(Iterable<? extends I> input) {
+            if (input instanceof Word && !(input instanceof CompressedWord)) {
+                // avoid the iterator allocation for words (compressed words only provide cheap iteration)
+                final Word<? extends I> word = (Word<? extends I>) input;
+                final int length = word.length();
+                for (int i = 0; i < length && current != SINK; i++) {
+                    stepInternal(word.getSymbol(i));
+                }
+            } else {
+                for (I i : input) {
+                    if (current == SINK) {
+                        return;
+                    }
+                    stepInternal(i);
+                }
+            }
+        }
+
+        @Override
+        public boolean step(I input) {
+            stepInternal(input);
+            return isAccepting();
+        }
+
+        private void stepInternal(I input) {
+            if (current == SINK || current == TERM) {
+                current = SINK;
+                return;
+            }
+
+            final int sym = alphabet.getSymbolIndex(input);
+
+            if (sym < 0) {
+                current = SINK;
+                return;
+            }
+
+            final int call = callIndices[sym];
+
+            if (call >= 0) {
+                final int next = initialStates[call];
+
+                if (next < 0) {
+                    current = SINK;
+                } else if (current == INIT) {
+                    if (call == initialProcedure) {
+                        push(TERM);
+                        current = next;
+                    } else {
+                        current = SINK;
+                    }
+                } else {
+                    // store the procedural successor in the stack so that we don't need to look it up on returns
+                    final int succ = transitions[current * numSymbols + sym];
+                    if (succ < 0) {
+                        current = SINK;
+                    } else {
+                        push(succ);
+                        current = next;
+                    }
+                }
+            } else if (current == INIT) {
+                current = SINK;
+            } else if (sym == returnIdx) {
+                if (transitions[current * numSymbols + sym] < 0) {
+                    current = SINK;
+                } else {
+                    current = stack[--depth];
+                }
+            } else {
+                current = transitions[current * numSymbols + sym];
+                if (current < 0) {
+                    current = SINK;
+                }
+            }
+        }
+
+        @Override
+        public boolean isAccepting() {
+            return current == INIT || current == TERM || (current >= 0 && accepting[current]);
+        }
+
+        @Override
+        public int depth() {
+            return depth;
+        }
+
+        @Override
+        public SBARunner<I> fork() {
+            final Run copy = new Run();
+            copy.stack = Arrays.copyOf(stack, Math.max(depth, 1) * 2);
+            copy.depth = depth;
+            copy.current = current;
+            return copy;
+        }
+
+        private void push(int state) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[depth++] = state;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterators;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * A {@link Word} that is represented by the concatenation of other (potentially compressed) words, i.e. a rope or a
+ * straight-line grammar. Expanding a call symbol with a terminating sequence only stores a reference to the
+ * terminating sequence instead of copying it, so that the expanded sequences of nested calls form a DAG whose size is
+ * linear (instead of exponential) in the nesting depth.
+ * <p>
+ * The length of a compressed word is available in constant time and iteration is lazy. Random access via {@link
+ * #getSymbol(int)} requires a binary search on each level of the DAG, so consumers should prefer iteration or bulk
+ * copies (e.g. via {@link WordBuilder#append(Word)}).
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public final class CompressedWord<I> extends Word<I> {
+
+    private final Word<? extends I>[] parts;
+    // offsets[i] is the index of the first symbol of parts[i]
+    private final int[] offsets;
+    private final int length;
+
+    private CompressedWord(Word<? extends I>[] parts) {
+        this.parts = parts;
+        this.offsets = new int[parts.length];
+
+        int offset = 0;
+        for (int i = 0; i < parts.length; i++) {
+            this.offsets[i] = offset;
+            offset += parts[i].length();
+        }
+
+        this.length = offset;
+    }
+
+    /**
+     * Returns the concatenation of the given words without copying their contents.
+     *
+     * @param parts
+     *         the words to concatenate
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the concatenation of the given words
+     */
+    @SafeVarargs
+    public static <I> Word<I> of(Word<? extends I>... parts) {
+        return of(Arrays.asList(parts));
+    }
+
+    /**
+     * Returns the concatenation of the given words without copying their contents.
+     *
+     * @param parts
+     *         the words to concatenate
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the concatenation of the given words
+     */
+    @SuppressWarnings("unchecked")
+    public static <I> Word<I> of(List<? extends Word<? extends I>> parts) {
+        final List<Word<? extends I>> nonEmpty = new ArrayList<>(parts.size());
+
+        for (Word<? extends I> p : parts) {
+            if (!p.isEmpty()) {
+                nonEmpty.add(p);
+            }
+        }
+
+        switch (nonEmpty.size()) {
+            case 0:
+                return Word.epsilon();
+            case 1:
+                return Word.upcast(nonEmpty.get(0));
+            default:
+                return new CompressedWord<>(nonEmpty.toArray(new Word[0]));
+        }
+    }
+
+    /**
+     * Expands the given (local) word by appending to each call symbol its terminating sequence and the return symbol.
+     * This is a non-copying variant of {@link SPAAlphabet#expand},
+     * i.e. the returned word only references the given terminating sequences.
+     *
+     * @param alphabet
+     *         the alphabet for classifying the symbols of the given word
+     * @param input
+     *         the word to expand
+     * @param terminatingSequences
+     *         the provider of terminating sequences
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the expanded word
+     */
+    public static <I> Word<I> expand(SPAAlphabet<I> alphabet,
+                                     Word<I> input,
+                                     Function<? super I, ? extends Word<I>> terminatingSequences) {
+        final List<Word<I>> parts = new ArrayList<>();
+        final Word<I> returnWord = Word.fromLetter(alphabet.getReturnSymbol());
+
+        int runStart = 0;
+        for (int i = 0; i < input.length(); i++) {
+            final I sym = input.getSymbol(i);
+
+            if (alphabet.isCallSymbol(sym)) {
+                // add the internal run including the call symbol
+                parts.add(input.subWord(runStart, i + 1));
+                parts.add(terminatingSequences.apply(sym));
+                parts.add(returnWord);
+                runStart = i + 1;
+            }
+        }
+
+        if (parts.isEmpty()) {
+            return input;
+        }
+
+        parts.add(input.subWord(runStart));
+
+        return of(parts);
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public I getSymbol(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+
+        final int part = findPart(index);
+        return parts[part].getSymbol(index - offsets[part]);
+    }
+
+    @Override
+    public Iterator<I> iterator() {
+        return Iterators.concat(Iterators.transform(Iterators.forArray(parts), Word::iterator));
+    }
+
+    @Override
+    protected Word<I> subWordInternal(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return Word.epsilon();
+        }
+
+        final int first = findPart(fromIndex);
+        final int last = findPart(toIndex - 1);
+        final List<Word<? extends I>> result = new ArrayList<>(last - first + 1);
+
+        for (int i = first; i <= last; i++) {
+            final int from = Math.max(fromIndex - offsets[i], 0);
+            final int to = Math.min(toIndex - offsets[i], parts[i].length());
+            result.add(parts[i].subWord(from, to));
+        }
+
+        return of(result);
+    }
+
+    @Override
+    public void writeToArray(int offset, Object[] array, int tgtOffset, int num) {
+        int remaining = num;
+        int src = offset;
+        int tgt = tgtOffset;
+        int part = remaining > 0 ? findPart(src) : parts.length;
+
+        while (remaining > 0) {
+            final Word<? extends I> p = parts[part];
+            final int local = src - offsets[part];
+            final int n = Math.min(remaining, p.length() - local);
+
+            p.writeToArray(local, array, tgt, n);
+
+            src += n;
+            tgt += n;
+            remaining -= n;
+            part++;
+        }
+    }
+
+    private int findPart(int index) {
+        final int idx = Arrays.binarySearch(offsets, index);
+        // for non-matching indices, binarySearch returns (-(insertion point) - 1)
+        return idx >= 0 ? idx : -idx - 2;
+    }
+}
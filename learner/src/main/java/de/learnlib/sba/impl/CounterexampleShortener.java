@@ -0,0 +1,348 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.NestedWordIndex;
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.util.MQUtil;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * A utility for shortening counterexamples before they are analyzed by the learner. A counterexample is shortened by
+ * <ul>
+ * <li>truncating it after the first symbol the hypothesis rejects (positive counterexamples only),</li>
+ * <li>replacing the contents of each closed (nested) call with the current terminating sequence of the {@link
+ * ATProvider}, if the latter is shorter, and</li>
+ * <li>removing loops of the procedural runs, i.e. (well-matched) segments of a procedure invocation after which the
+ * hypothesis procedure is in the same state as before.</li>
+ * </ul>
+ * None of these steps changes the output of the hypothesis (up to the symbol at which a positive counterexample is
+ * rejected). For positive counterexamples, the truncation and the substitution of terminating sequences also preserve
+ * the output of the system under learning, so that the shortened word is a counterexample without posing any queries.
+ * All other candidates are verified with a single batch of membership queries (for all given counterexamples) and the
+ * shortest verified candidate is returned.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class CounterexampleShortener<I> {
+
+    private final SPAAlphabet<I> alphabet;
+    private final MembershipOracle<I, Boolean> oracle;
+    private final ATProvider<I> atProvider;
+
+    private long verificationQueries;
+
+    public CounterexampleShortener(SPAAlphabet<I> alphabet,
+                                   MembershipOracle<I, Boolean> oracle,
+                                   ATProvider<I> atProvider) {
+        this.alphabet = alphabet;
+        this.oracle = oracle;
+        this.atProvider = atProvider;
+    }
+
+    /**
+     * Shortens the given counterexample with respect to the given hypothesis.
+     *
+     * @param hypothesis
+     *         the hypothesis
+     * @param counterexample
+     *         the counterexample
+     *
+     * @return the shortened counterexample, or the given counterexample if it could not be shortened
+     */
+    public DefaultQuery<I, Boolean> shorten(SBA<?, I> hypothesis, DefaultQuery<I, Boolean> counterexample) {
+        return shorten(hypothesis, Collections.singletonList(counterexample)).get(0);
+    }
+
+    /**
+     * Shortens the given counterexamples with respect to the given hypothesis. Queries that are no counterexamples
+     * for the hypothesis are returned unchanged.
+     *
+     * @param hypothesis
+     *         the hypothesis
+     * @param counterexamples
+     *         the counterexamples
+     *
+     * @return the shortened counterexamples, in the order of the given counterexamples
+     */
+    public List<DefaultQuery<I, Boolean>> shorten(SBA<?, I> hypothesis,
+                                                 Collection<? extends DefaultQuery<I, Boolean>> counterexamples) {
+
+        final List<DefaultQuery<I, Boolean>> result = new ArrayList<>(counterexamples.size());
+        final List<List<DefaultQuery<I, Boolean>>> candidates = new ArrayList<>(counterexamples.size());
+        final List<DefaultQuery<I, Boolean>> queries = new ArrayList<>();
+
+        for (DefaultQuery<I, Boolean> ce : counterexamples) {
+            final List<DefaultQuery<I, Boolean>> unverified = new ArrayList<>();
+
+            if (MQUtil.isCounterexample(ce, hypothesis)) {
+                result.add(computeCandidates(hypothesis, ce, unverified));
+            } else {
+                result.add(ce);
+            }
+
+            candidates.add(unverified);
+            queries.addAll(unverified);
+        }
+
+        if (queries.isEmpty()) {
+            return result;
+        }
+
+        this.oracle.processQueries(queries);
+        this.verificationQueries += queries.size();
+
+        for (int i = 0; i < result.size(); i++) {
+            DefaultQuery<I, Boolean> best = result.get(i);
+
+            for (DefaultQuery<I, Boolean> candidate : candidates.get(i)) {
+                if (candidate.getInput().length() < best.getInput().length() &&
+                    MQUtil.isCounterexample(candidate, hypothesis)) {
+                    best = candidate;
+                }
+            }
+
+            result.set(i, best);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of membership queries that have been posed for verifying shortened counterexamples.
+     *
+     * @return the number of verification queries
+     */
+    public long getVerificationQueries() {
+        return this.verificationQueries;
+    }
+
+    /**
+     * Returns the shortest counterexample that does not require verification and collects the (shorter) candidates
+     * that need to be verified.
+     */
+    private DefaultQuery<I, Boolean> computeCandidates(SBA<?, I> hypothesis,
+                                                       DefaultQuery<I, Boolean> ce,
+                                                       List<DefaultQuery<I, Boolean>> unverified) {
+        final Word<I> input = ce.getInput();
+        final boolean output = ce.getOutput();
+
+        if (output) {
+            // the system accepts all prefixes and the hypothesis rejects the substituted prefix as well (either in the
+            // substituted terminating sequences or at the same symbol as before)
+            final Word<I> truncated = truncate(hypothesis, input);
+            final Word<I> substituted = truncate(hypothesis, substitute(truncated, truncated.length() - 1));
+            final Word<I> shortened = removeLoops(hypothesis, substituted, substituted.length() - 1);
+
+            if (shortened.length() < substituted.length()) {
+                unverified.add(new DefaultQuery<>(shortened));
+            }
+
+            return substituted.length() < input.length() ? new DefaultQuery<>(substituted, true) : ce;
+        }
+
+        // the system rejects the counterexample at an unknown position, so every candidate needs to be verified
+        final Word<I> substituted = substitute(input, input.length());
+        final Set<Word<I>> words = new LinkedHashSet<>();
+
+        words.add(removeLoops(hypothesis, substituted, substituted.length()));
+        words.add(substituted);
+        words.add(removeLoops(hypothesis, input, input.length()));
+
+        for (Word<I> w : words) {
+            // the substituted terminating sequences may be rejected by the hypothesis
+            if (w.length() < input.length() && hypothesis.accepts(w)) {
+                unverified.add(new DefaultQuery<>(w));
+            }
+        }
+
+        return ce;
+    }
+
+    /**
+     * Truncates the given word after the first symbol that is rejected by the hypothesis.
+     */
+    private Word<I> truncate(SBA<?, I> hypothesis, Word<I> word) {
+        final SBARunner<I> runner = hypothesis.createRunner();
+        int idx = 0;
+
+        for (I i : word) {
+            idx++;
+            if (!runner.step(i)) {
+                break;
+            }
+        }
+
+        return idx < word.length() ? word.prefix(idx) : word;
+    }
+
+    /**
+     * Replaces the contents of all closed calls (except the initial one) that return before the given limit with the
+     * respective terminating sequence, if the latter is shorter.
+     */
+    @SuppressWarnings("PMD.AvoidReassigningLoopVariables") // we want to skip ahead here
+    private Word<I> substitute(Word<I> word, int limit) {
+        final NestedWordIndex<I> index = new NestedWordIndex<>(alphabet, word);
+        final WordBuilder<I> wb = new WordBuilder<>(word.length());
+        boolean changed = false;
+
+        for (int i = 0; i < word.length(); i++) {
+            final I sym = word.getSymbol(i);
+            wb.append(sym);
+
+            if (i == 0 || !alphabet.isCallSymbol(sym) || !atProvider.hasTerminatingSequence(sym)) {
+                continue;
+            }
+
+            final int returnIdx = index.getMatchingReturn(i);
+
+            if (returnIdx >= 0 && returnIdx < limit) {
+                final Word<I> ts = atProvider.getTerminatingSequence(sym);
+
+                if (ts.length() < returnIdx - i - 1) {
+                    wb.append(ts).append(alphabet.getReturnSymbol());
+                    i = returnIdx;
+                    changed = true;
+                }
+            }
+        }
+
+        return changed ? wb.toWord() : word;
+    }
+
+    /**
+     * Removes the loops of all procedure invocations whose segments end before the given limit.
+     */
+    private Word<I> removeLoops(SBA<?, I> hypothesis, Word<I> word, int limit) {
+        final NestedWordIndex<I> index = new NestedWordIndex<>(alphabet, word);
+        final boolean[] removed = new boolean[word.length()];
+        final Map<I, DFA<?, I>> procedures = hypothesis.getProcedures();
+        boolean changed = false;
+
+        for (int i = 0; i < limit; i++) {
+            if (removed[i]) {
+                continue;
+            }
+
+            final I sym = word.getSymbol(i);
+
+            if (alphabet.isCallSymbol(sym)) {
+                final DFA<?, I> procedure = procedures.get(sym);
+                if (procedure != null) {
+                    changed |= markLoops(procedure, index, i, limit, removed);
+                }
+            }
+        }
+
+        if (!changed) {
+            return word;
+        }
+
+        final WordBuilder<I> wb = new WordBuilder<>(word.length());
+
+        for (int i = 0; i < word.length(); i++) {
+            if (!removed[i]) {
+                wb.append(word.getSymbol(i));
+            }
+        }
+
+        return wb.toWord();
+    }
+
+    /**
+     * Marks the loops of the invocation at the given call index. Each (local) step of the invocation is either an
+     * internal symbol or a closed call. Loops are removed greedily, i.e. from each state we skip ahead to the last
+     * step after which the procedure is in the same state again.
+     */
+    private <S> boolean markLoops(DFA<S, I> procedure,
+                                  NestedWordIndex<I> index,
+                                  int callIdx,
+                                  int limit,
+                                  boolean[] removed) {
+        final Word<I> word = index.getWord();
+        final List<S> states = new ArrayList<>();
+        final List<Integer> positions = new ArrayList<>();
+
+        S state = procedure.getInitialState();
+        int pos = callIdx + 1;
+
+        // the state of the procedure before the symbol at the respective position
+        while (state != null) {
+            states.add(state);
+            positions.add(pos);
+
+            if (pos >= limit) {
+                break;
+            }
+
+            final I sym = word.getSymbol(pos);
+            final int end;
+
+            if (alphabet.isInternalSymbol(sym)) {
+                end = pos;
+            } else if (alphabet.isCallSymbol(sym)) {
+                end = index.getMatchingReturn(pos);
+                if (end < 0 || end >= limit) {
+                    break;
+                }
+            } else {
+                break;
+            }
+
+            state = procedure.getSuccessor(state, sym);
+            pos = end + 1;
+        }
+
+        final Map<S, Integer> lastOccurrence = new HashMap<>();
+        for (int k = 0; k < states.size(); k++) {
+            lastOccurrence.put(states.get(k), k);
+        }
+
+        boolean changed = false;
+        int k = 0;
+
+        while (k < states.size()) {
+            final int last = lastOccurrence.get(states.get(k));
+
+            if (last > k) {
+                Arrays.fill(removed, positions.get(k), positions.get(last), true);
+                changed = true;
+                k = last;
+            } else {
+                k++;
+            }
+        }
+
+        return changed;
+    }
+}
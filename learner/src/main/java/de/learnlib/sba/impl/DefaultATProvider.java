@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Set;
 
 import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.NestedWordIndex;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import de.learnlib.api.AccessSequenceTransformer;
@@ -35,6 +36,8 @@ public class DefaultATProvider<I> implements ATProvider<I> {
 
     private final SPAAlphabet<I> alphabet;
 
+    private long version;
+
     public DefaultATProvider(final SPAAlphabet<I> alphabet) {
         this.alphabet = alphabet;
 
@@ -59,8 +62,24 @@ public class DefaultATProvider<I> implements ATProvider<I> {
         return this.terminatingSequences.containsKey(procedure);
     }
 
+    @Override
+    public boolean hasAccessSequence(I procedure) {
+        return this.accessSequences.containsKey(procedure);
+    }
+
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
     @Override
     public Pair<Set<I>, Set<I>> scanPositiveCounterexample(Word<I> input) {
+        return scanPositiveCounterexample(new NestedWordIndex<>(alphabet, input));
+    }
+
+    @Override
+    public Pair<Set<I>, Set<I>> scanPositiveCounterexample(NestedWordIndex<I> index) {
+        final Word<I> input = index.getWord();
         final Set<I> newCalls = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls() - accessSequences.size());
         final Set<I> newTerms = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls() - terminatingSequences.size());
 
@@ -74,7 +93,7 @@ public class DefaultATProvider<I> implements ATProvider<I> {
                     newCalls.add(sym);
                 }
 
-                final int returnIdx = this.alphabet.findReturnIndex(input, i + 1);
+                final int returnIdx = index.getMatchingReturn(i);
 
                 if (returnIdx > 0 && !this.terminatingSequences.containsKey(sym)) {
                     this.terminatingSequences.put(sym, input.subWord(i + 1, returnIdx));
@@ -83,6 +102,10 @@ public class DefaultATProvider<I> implements ATProvider<I> {
             }
         }
 
+        if (!newCalls.isEmpty() || !newTerms.isEmpty()) {
+            this.version++;
+        }
+
         return Pair.of(newCalls, newTerms);
     }
 
@@ -0,0 +1,145 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.ToDoubleFunction;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Alphabet;
+
+/**
+ * A {@link MembershipOracle} that measures the latencies of the queries posed to a delegate oracle and learns an
+ * estimate of the execution costs of the individual input symbols. The estimates can be passed as a cost function to
+ * the {@link OptimizingATProvider}, so that access and terminating sequences are optimized w.r.t. their execution time
+ * rather than their length.
+ * <p>
+ * The latency of a batch is modeled as a constant per-query overhead plus the sum of the costs of all queried symbols.
+ * The model is fitted online via the normalized least-mean-squares (NLMS) rule. Observed latencies that have been
+ * measured elsewhere (e.g. by the system under learning) can be added via {@link #observe(Collection, long)}. The
+ * model assumes that all symbols of a query are executed, i.e. systems that abort queries early should report their
+ * latencies manually.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class LatencyCostModel<I> implements MembershipOracle<I, Boolean>, ToDoubleFunction<I> {
+
+    private static final double DEFAULT_LEARNING_RATE = 0.5;
+    // keep the estimates positive, so that they can be used as (Dijkstra) edge weights
+    private static final double MIN_COST = 1e-3;
+
+    private final Alphabet<I> alphabet;
+    private final MembershipOracle<I, Boolean> delegate;
+    private final double learningRate;
+
+    // the symbol costs (in nanoseconds) at the symbol indices, followed by the per-query overhead
+    private final double[] weights;
+
+    public LatencyCostModel(Alphabet<I> alphabet, MembershipOracle<I, Boolean> delegate) {
+        this(alphabet, delegate, DEFAULT_LEARNING_RATE);
+    }
+
+    public LatencyCostModel(Alphabet<I> alphabet, MembershipOracle<I, Boolean> delegate, double learningRate) {
+        if (learningRate <= 0 || learningRate >= 2) {
+            throw new IllegalArgumentException("The learning rate needs to be in (0, 2)");
+        }
+
+        this.alphabet = alphabet;
+        this.delegate = delegate;
+        this.learningRate = learningRate;
+        this.weights = new double[alphabet.size() + 1];
+
+        // start with uniform costs, i.e. optimize for length until the first observation
+        Arrays.fill(this.weights, 1);
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Boolean>> queries) {
+        if (queries.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        this.delegate.processQueries(queries);
+        observe(queries, System.nanoTime() - start);
+    }
+
+    /**
+     * Updates the cost estimates with the given observation.
+     *
+     * @param queries
+     *         the (batch of) executed queries
+     * @param latencyNanos
+     *         the latency of executing the queries in nanoseconds
+     */
+    public void observe(Collection<? extends Query<I, ?>> queries, long latencyNanos) {
+        final int overheadIdx = this.weights.length - 1;
+        final double[] counts = new double[this.weights.length];
+
+        for (Query<I, ?> q : queries) {
+            for (I i : q.getInput()) {
+                counts[alphabet.getSymbolIndex(i)]++;
+            }
+        }
+        counts[overheadIdx] = queries.size();
+
+        double norm = 0;
+        for (double c : counts) {
+            norm += c * c;
+        }
+
+        synchronized (this.weights) {
+            double prediction = 0;
+            for (int j = 0; j < counts.length; j++) {
+                prediction += this.weights[j] * counts[j];
+            }
+
+            final double step = this.learningRate * (latencyNanos - prediction) / norm;
+
+            for (int j = 0; j < counts.length; j++) {
+                this.weights[j] = Math.max(MIN_COST, this.weights[j] + step * counts[j]);
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated execution costs of the given symbol in nanoseconds.
+     *
+     * @param symbol
+     *         the input symbol
+     *
+     * @return the estimated costs
+     */
+    @Override
+    public double applyAsDouble(I symbol) {
+        synchronized (this.weights) {
+            return this.weights[alphabet.getSymbolIndex(symbol)];
+        }
+    }
+
+    /**
+     * Returns the estimated overhead of executing a single query (e.g. resetting the system) in nanoseconds.
+     *
+     * @return the estimated overhead
+     */
+    public double getQueryOverhead() {
+        synchronized (this.weights) {
+            return this.weights[this.weights.length - 1];
+        }
+    }
+}
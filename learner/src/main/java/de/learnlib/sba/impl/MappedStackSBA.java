@@ -15,10 +15,12 @@
 package de.learnlib.sba.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
 import com.google.common.collect.Maps;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.commons.util.mappings.Mapping;
@@ -43,6 +45,7 @@ public class MappedStackSBA<S, I>
     private final I initialCall;
     private final Map<I, DFA<S, SymbolWrapper<I>>> procedures;
     private final Mapping<I, SymbolWrapper<I>> mapping;
+    private final Map<I, DFA<?, I>> procedureViews;
 
     // cast is fine, because we make sure to only query states belonging to the respective procedures
     @SuppressWarnings("unchecked")
@@ -54,6 +57,12 @@ public class MappedStackSBA<S, I>
         this.initialCall = initialCall;
         this.procedures = (Map<I, DFA<S, SymbolWrapper<I>>>) procedures;
         this.mapping = mapping;
+
+        final Map<I, DFA<?, I>> views = Maps.newHashMapWithExpectedSize(procedures.size());
+        for (Map.Entry<I, DFA<S, SymbolWrapper<I>>> e : this.procedures.entrySet()) {
+            views.put(e.getKey(), new DFAView<>(e.getValue()));
+        }
+        this.procedureViews = Collections.unmodifiableMap(views);
     }
 
     @Override
@@ -150,7 +159,12 @@ public class MappedStackSBA<S, I>
 
     @Override
     public Map<I, DFA<?, I>> getProcedures() {
-        return Maps.transformValues(this.procedures, DFAView::new);
+        return this.procedureViews;
+    }
+
+    @Override
+    public SBARunner<I> createRunner() {
+        return new StackSBARunner<>(alphabet, initialCall, procedures, mapping::get);
     }
 
     private class DFAView<S2> implements DFA<S2, I> {
@@ -0,0 +1,163 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import de.learnlib.sba.api.MismatchAnalyzer;
+
+/**
+ * A collection of predefined {@link MismatchAnalyzer}s, similar to the {@code AcexAnalyzers} of LearnLib.
+ */
+public final class MismatchAnalyzers {
+
+    /**
+     * Scans the prefixes in ascending length. Requires the fewest queries if mismatches occur early.
+     */
+    public static final MismatchAnalyzer LINEAR_FWD = (oracle, lower, upper) -> {
+        for (int l = lower + 1; l < upper; l++) {
+            if (!oracle.accepts(l)) {
+                return l - 1;
+            }
+        }
+        return upper - 1;
+    };
+
+    /**
+     * Scans the prefixes in descending length. Requires the fewest queries if mismatches occur late.
+     */
+    public static final MismatchAnalyzer LINEAR_BWD = (oracle, lower, upper) -> {
+        for (int l = upper - 1; l > lower; l--) {
+            if (oracle.accepts(l)) {
+                return l;
+            }
+        }
+        return lower;
+    };
+
+    /**
+     * Performs a binary search over the prefix lengths. For prefix-closed systems, this coincides with the
+     * Rivest-Schapire style counterexample decomposition.
+     */
+    public static final MismatchAnalyzer BINARY_SEARCH = MismatchAnalyzers::binarySearch;
+
+    /**
+     * Probes prefixes of exponentially growing length (starting from the shortest prefix) until a rejected prefix is
+     * found and continues with a binary search in the remaining interval.
+     */
+    public static final MismatchAnalyzer EXPONENTIAL_FWD = (oracle, lower, upper) -> {
+        int low = lower;
+        int high = upper;
+        int step = 1;
+
+        while (low + step < high) {
+            final int probe = low + step;
+            if (oracle.accepts(probe)) {
+                low = probe;
+                step *= 2;
+            } else {
+                high = probe;
+                break;
+            }
+        }
+
+        return binarySearch(oracle, low, high);
+    };
+
+    /**
+     * Probes prefixes of exponentially shrinking length (starting from the longest prefix) until an accepted prefix is
+     * found and continues with a binary search in the remaining interval.
+     */
+    public static final MismatchAnalyzer EXPONENTIAL_BWD = (oracle, lower, upper) -> {
+        int low = lower;
+        int high = upper;
+        int step = 1;
+
+        while (high - step > low) {
+            final int probe = high - step;
+            if (oracle.accepts(probe)) {
+                low = probe;
+                break;
+            } else {
+                high = probe;
+                step *= 2;
+            }
+        }
+
+        return binarySearch(oracle, low, high);
+    };
+
+    private MismatchAnalyzers() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a {@link MismatchAnalyzer} that queries {@code k} evenly spaced prefixes per round in a single batch. This
+     * allows (parallel) oracles to answer the queries of a round concurrently and reduces the number of sequential
+     * rounds to log_{k+1}(n) at the cost of additional queries. For {@code k = 1} this coincides with {@link
+     * #BINARY_SEARCH}.
+     *
+     * @param k
+     *         the number of prefixes queried per round
+     *
+     * @return the batched analyzer
+     */
+    public static MismatchAnalyzer batched(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The batch size needs to be positive");
+        }
+
+        return (oracle, lower, upper) -> {
+            int low = lower;
+            int high = upper;
+
+            while (high - low > 1) {
+                final int range = high - low;
+                final int[] probes = new int[Math.min(k, range - 1)];
+
+                for (int j = 0; j < probes.length; j++) {
+                    probes[j] = low + (int) ((long) (j + 1) * range / (probes.length + 1));
+                }
+
+                final boolean[] answers = oracle.accepts(probes);
+
+                for (int j = 0; j < probes.length; j++) {
+                    if (answers[j]) {
+                        low = probes[j];
+                    } else {
+                        high = probes[j];
+                        break;
+                    }
+                }
+            }
+
+            return low;
+        };
+    }
+
+    private static int binarySearch(MismatchAnalyzer.PrefixOracle oracle, int lower, int upper) {
+        int low = lower;
+        int high = upper;
+
+        while (high - low > 1) {
+            final int mid = low + (high - low) / 2;
+            if (oracle.accepts(mid)) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,246 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.sba.api.ATProvider;
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A cache oracle for systems with SBA semantics that normalizes queries before looking them up.
+ * <p>
+ * In an SBA, the behavior of a caller after a completed call {@code c ... R} only depends on the call symbol {@code
+ * c}. Hence, the acceptance of a word can be decomposed into the acceptance of its canonical form, in which every
+ * closed call is replaced by the call symbol, the (canonical) terminating sequence of the {@link ATProvider}, and the
+ * return symbol (see also {@link OptimizingATProvider}), and the acceptance of the contents of each replaced call,
+ * which are checked in the (canonical) context of the respective call. A query is answered from the {@link
+ * PrefixClosedCache} if either its input or all of its decomposed words are known. On a miss, only the original input
+ * is forwarded to the delegate oracle. If it is accepted, all of its decomposed words are cached as accepted, so
+ * queries that only differ in the contents of nested calls share most of their entries.
+ * <p>
+ * This decomposition requires that the terminating sequences of the given {@link ATProvider} are valid for the system
+ * under learning, which is the case if they have been extracted from positive counterexamples. Calls without a
+ * terminating sequence are not normalized.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class NormalizingCacheOracle<I> implements MembershipOracle<I, Boolean> {
+
+    private final SPAAlphabet<I> alphabet;
+    private final MembershipOracle<I, Boolean> delegate;
+    private final ATProvider<I> atProvider;
+    private final PrefixClosedCache<I> cache;
+
+    public NormalizingCacheOracle(SPAAlphabet<I> alphabet,
+                                  MembershipOracle<I, Boolean> delegate,
+                                  ATProvider<I> atProvider) {
+        this.alphabet = alphabet;
+        this.delegate = delegate;
+        this.atProvider = atProvider;
+        this.cache = new PrefixClosedCache<>();
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Boolean>> queries) {
+
+        final List<Normalization> normalizations = new ArrayList<>(queries.size());
+        final Map<Word<I>, DefaultQuery<I, Boolean>> unknown = new LinkedHashMap<>();
+
+        synchronized (cache) {
+            for (Query<I, Boolean> q : queries) {
+                final Normalization n = normalize(q);
+
+                if (!n.resolve()) {
+                    // forward the original query, so that a miss costs no more than without the cache
+                    unknown.computeIfAbsent(n.input, DefaultQuery::new);
+                }
+
+                normalizations.add(n);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            delegate.processQueries(unknown.values());
+
+            synchronized (cache) {
+                for (DefaultQuery<I, Boolean> q : unknown.values()) {
+                    cache.insert(q.getInput(), q.getOutput());
+                }
+
+                for (Normalization n : normalizations) {
+                    if (n.output == null) {
+                        n.output = unknown.get(n.input).getOutput();
+
+                        // an accepted word implies the acceptance of its decomposition
+                        if (n.output) {
+                            for (Word<I> w : n.words) {
+                                cache.insert(w, true);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Normalization n : normalizations) {
+            n.query.answer(n.output);
+        }
+    }
+
+    /**
+     * Decomposes the input of the given query. The canonical words are represented as {@link CompressedWord}s that
+     * share the (canonical) prefix of the enclosing calls and reference the sub words of the input, so that the
+     * decomposition does not copy the input for every closed call.
+     */
+    private Normalization normalize(Query<I, Boolean> query) {
+        final Word<I> input = query.getInput();
+        final Word<I> returnWord = Word.fromLetter(alphabet.getReturnSymbol());
+        final List<Word<I>> words = new ArrayList<>();
+        final Deque<Frame<I>> frames = new ArrayDeque<>();
+
+        Frame<I> frame = new Frame<>(null, Word.epsilon(), 0);
+        int idx = 0;
+
+        for (I sym : input) {
+            if (alphabet.isCallSymbol(sym)) {
+                frame.parts.add(input.subWord(frame.runStart, idx + 1));
+                frame.runStart = idx + 1;
+                frames.push(frame);
+                frame = new Frame<>(sym, CompressedWord.of(frame.prefix, CompressedWord.of(frame.parts)), idx + 1);
+            } else if (alphabet.isReturnSymbol(sym) && !frames.isEmpty()) {
+                final Word<I> content = frame.getContent(input, idx);
+                final I call = frame.call;
+                final Word<I> callPrefix = frame.prefix;
+
+                frame = frames.pop();
+
+                if (atProvider.hasTerminatingSequence(call)) {
+                    // check the actual content of the call in its canonical context
+                    words.add(CompressedWord.of(callPrefix, content, returnWord));
+
+                    // and continue with the canonical content
+                    frame.parts.add(atProvider.getTerminatingSequence(call));
+                } else {
+                    frame.parts.add(content);
+                }
+
+                frame.parts.add(returnWord);
+                frame.runStart = idx + 1;
+            }
+
+            idx++;
+        }
+
+        // close the pending calls
+        while (!frames.isEmpty()) {
+            final Word<I> content = frame.getContent(input, idx);
+            frame = frames.pop();
+            frame.parts.add(content);
+        }
+
+        words.add(frame.getContent(input, idx));
+
+        return new Normalization(query, input, words);
+    }
+
+    /**
+     * The canonical form of a (pending) call, i.e. the canonical word up to and including its call symbol and the
+     * canonical parts of its content read so far.
+     */
+    private static final class Frame<I> {
+
+        private final @Nullable I call;
+        private final Word<I> prefix;
+        private final List<Word<I>> parts;
+        private int runStart;
+
+        Frame(@Nullable I call, Word<I> prefix, int runStart) {
+            this.call = call;
+            this.prefix = prefix;
+            this.parts = new ArrayList<>();
+            this.runStart = runStart;
+        }
+
+        /**
+         * Returns the canonical content of this frame, including the unmodified symbols of the input up to the given
+         * index.
+         */
+        Word<I> getContent(Word<I> input, int toIndex) {
+            parts.add(input.subWord(runStart, toIndex));
+            runStart = toIndex;
+            return CompressedWord.of(parts);
+        }
+    }
+
+    private final class Normalization {
+
+        private final Query<I, Boolean> query;
+        private final Word<I> input;
+        private final List<Word<I>> words;
+        private Boolean output;
+
+        Normalization(Query<I, Boolean> query, Word<I> input, List<Word<I>> words) {
+            this.query = query;
+            this.input = input;
+            this.words = words;
+        }
+
+        /**
+         * Tries to compute the output of the query from the cache, either via its original input or via its
+         * decomposition. The latter is accepted iff all of its normalized words are accepted.
+         *
+         * @return {@code true} if the output could be determined, {@code false} otherwise
+         */
+        boolean resolve() {
+            final Boolean direct = cache.lookup(input);
+
+            if (direct != null) {
+                output = direct;
+                return true;
+            }
+
+            boolean complete = true;
+
+            for (Word<I> w : words) {
+                final Boolean answer = cache.lookup(w);
+                if (answer == null) {
+                    complete = false;
+                } else if (!answer) {
+                    output = Boolean.FALSE;
+                    return true;
+                }
+            }
+
+            if (complete) {
+                output = Boolean.TRUE;
+            }
+
+            return complete;
+        }
+    }
+}
@@ -14,15 +14,23 @@
  */
 package de.learnlib.sba.impl;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.function.ToDoubleFunction;
 
 import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.NestedWordIndex;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import de.learnlib.api.AccessSequenceTransformer;
@@ -32,20 +40,51 @@ import net.automatalib.util.automata.cover.Covers;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.VPDAlphabet.SymbolType;
 import net.automatalib.words.Word;
-import net.automatalib.words.WordBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class OptimizingATProvider<I> implements ATProvider<I> {
 
     private final Map<I, Word<I>> accessSequences;
     private final Map<I, Word<I>> terminatingSequences;
+    // the costs of the stored sequences, so that they don't need to be re-computed (and expanded) on every comparison
+    private final Map<I, Double> accessCosts;
+    private final Map<I, Double> terminatingCosts;
 
     private final SPAAlphabet<I> alphabet;
+    private final @Nullable ToDoubleFunction<? super I> symbolCosts;
 
+    private long version;
+
+    /**
+     * Constructor. Access and terminating sequences are optimized w.r.t. their lengths.
+     *
+     * @param alphabet
+     *         the input alphabet
+     */
     public OptimizingATProvider(final SPAAlphabet<I> alphabet) {
+        this(alphabet, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the input alphabet
+     * @param symbolCosts
+     *         the (positive) execution costs of the individual input symbols. Access and terminating sequences are
+     *         optimized w.r.t. the summed costs of their symbols, so a constant function minimizes their lengths. The
+     *         function may change over time (see e.g. {@link LatencyCostModel}). The costs of a sequence are computed
+     *         when the sequence is stored, so only subsequently found sequences are affected.
+     */
+    public OptimizingATProvider(final SPAAlphabet<I> alphabet,
+                                final @Nullable ToDoubleFunction<? super I> symbolCosts) {
         this.alphabet = alphabet;
+        this.symbolCosts = symbolCosts;
 
         this.accessSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
         this.terminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        this.accessCosts = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        this.terminatingCosts = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
     }
 
     @Override
@@ -65,8 +104,23 @@ public class OptimizingATProvider<I> implements ATProvider<I> {
         return this.terminatingSequences.containsKey(procedure);
     }
 
+    @Override
+    public boolean hasAccessSequence(I procedure) {
+        return this.accessSequences.containsKey(procedure);
+    }
+
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
     @Override
     public Pair<Set<I>, Set<I>> scanPositiveCounterexample(Word<I> counterexample) {
+        return scanPositiveCounterexample(new NestedWordIndex<>(this.alphabet, counterexample));
+    }
+
+    @Override
+    public Pair<Set<I>, Set<I>> scanPositiveCounterexample(NestedWordIndex<I> counterexample) {
         final Set<I> newCalls =
                 Sets.newHashSetWithExpectedSize(this.alphabet.getNumCalls() - this.accessSequences.size());
         final Set<I> newTerms =
@@ -78,165 +132,392 @@ public class OptimizingATProvider<I> implements ATProvider<I> {
         return Pair.of(newCalls, newTerms);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Terminating sequences are computed via a Dijkstra-style (Knuth's generalization for grammars) algorithm: The
+     * candidates of each procedure (i.e. access sequences of hypothesis states that may return) are computed once and
+     * their costs (w.r.t. the symbol costs) are only re-evaluated when the terminating sequence of a procedure they call has been
+     * finalized. Procedures are finalized in the order of their costs, so each terminating sequence is expanded only
+     * once, and only the sequences that contain an improved procedure are minimized afterwards.
+     */
     @Override
     public Set<I> scanRefinedProcedures(Map<I, ? extends DFA<?, SymbolWrapper<I>>> procedures,
                                         Map<I, ? extends AccessSequenceTransformer<SymbolWrapper<I>>> providers,
                                         Collection<SymbolWrapper<I>> inputs) {
 
         final Set<I> newTS = new HashSet<>();
-        if (!procedures.isEmpty()) {
-
-            final SymbolWrapper<I> returnSymbol = inputs.stream()
-                                                        .filter(i -> i.getType() == SymbolType.RETURN)
-                                                        .findAny()
-                                                        .orElseThrow(IllegalArgumentException::new);
-            boolean foundImprovements = false;
-            boolean stable = false;
-
-            while (!stable) {
-                stable = true;
-                for (Map.Entry<I, ? extends DFA<?, SymbolWrapper<I>>> entry : procedures.entrySet()) {
-                    final I i = entry.getKey();
-                    final DFA<?, SymbolWrapper<I>> automaton = entry.getValue();
-                    final Word<I> currentTS = terminatingSequences.get(i);
-                    assert providers.containsKey(i);
-                    final Word<I> hypTS = getShortestHypothesisTS(automaton, providers.get(i), inputs, returnSymbol);
-
-                    if (hypTS != null && (currentTS == null || hypTS.size() < currentTS.size())) {
-
-                        if (currentTS == null) {
-                            newTS.add(i);
-                        }
-
-                        terminatingSequences.put(i, hypTS);
-                        stable = false;
-                        foundImprovements = true;
+        if (procedures.isEmpty()) {
+            return newTS;
+        }
+
+        final SymbolWrapper<I> returnSymbol = inputs.stream()
+                                                    .filter(i -> i.getType() == SymbolType.RETURN)
+                                                    .findAny()
+                                                    .orElseThrow(IllegalArgumentException::new);
+
+        final Map<I, List<Word<SymbolWrapper<I>>>> candidates = Maps.newHashMapWithExpectedSize(procedures.size());
+        final Map<I, Set<I>> dependents = new HashMap<>();
+
+        for (Map.Entry<I, ? extends DFA<?, SymbolWrapper<I>>> entry : procedures.entrySet()) {
+            final I procedure = entry.getKey();
+            assert providers.containsKey(procedure);
+            final List<Word<SymbolWrapper<I>>> procedureCandidates =
+                    getHypothesisCandidates(entry.getValue(), providers.get(procedure), inputs, returnSymbol);
+
+            candidates.put(procedure, procedureCandidates);
+
+            for (Word<SymbolWrapper<I>> c : procedureCandidates) {
+                for (SymbolWrapper<I> sym : c) {
+                    if (this.alphabet.isCallSymbol(sym.getDelegate())) {
+                        dependents.computeIfAbsent(sym.getDelegate(), k -> new HashSet<>()).add(procedure);
                     }
                 }
             }
+        }
+
+        // tentative costs of the procedures under consideration, the costs of all other procedures are fixed
+        final Map<I, Double> costs = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        final Map<I, Word<SymbolWrapper<I>>> bestCandidates = Maps.newHashMapWithExpectedSize(procedures.size());
+        final Set<I> finalized = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls());
+        final PriorityQueue<Pair<Double, I>> queue = new PriorityQueue<>(Comparator.comparing(Pair::getFirst));
+
+        for (Map.Entry<I, Double> e : this.terminatingCosts.entrySet()) {
+            if (!procedures.containsKey(e.getKey())) {
+                costs.put(e.getKey(), e.getValue());
+                finalized.add(e.getKey());
+            }
+        }
 
-            if (foundImprovements) {
-                optimizeSequences(this.accessSequences);
-                optimizeSequences(this.terminatingSequences);
+        for (I procedure : procedures.keySet()) {
+            final Double cost = this.terminatingCosts.get(procedure);
+            if (cost != null) {
+                costs.put(procedure, cost);
+                queue.add(Pair.of(cost, procedure));
             }
+            evaluate(procedure, candidates, costs, bestCandidates, finalized, queue);
+        }
+
+        final Set<I> improved = new HashSet<>();
+
+        while (!queue.isEmpty()) {
+            final Pair<Double, I> next = queue.poll();
+            final I procedure = next.getSecond();
+
+            // skip outdated entries
+            if (finalized.contains(procedure) || !next.getFirst().equals(costs.get(procedure))) {
+                continue;
+            }
+
+            finalized.add(procedure);
+
+            final Word<SymbolWrapper<I>> best = bestCandidates.get(procedure);
+            if (best != null) {
+                // all called procedures have been finalized, so their terminating sequences are up-to-date
+                if (!this.terminatingSequences.containsKey(procedure)) {
+                    newTS.add(procedure);
+                }
+                updateSequence(this.terminatingSequences,
+                               this.terminatingCosts,
+                               procedure,
+                               CompressedWord.expand(this.alphabet,
+                                                     best.transform(SymbolWrapper::getDelegate),
+                                                     terminatingSequences::get),
+                               costs.get(procedure));
+                improved.add(procedure);
+            }
+
+            for (I dependent : dependents.getOrDefault(procedure, Collections.emptySet())) {
+                if (!finalized.contains(dependent)) {
+                    evaluate(dependent, candidates, costs, bestCandidates, finalized, queue);
+                }
+            }
+        }
+
+        if (!improved.isEmpty()) {
+            optimizeSequences(this.accessSequences, this.accessCosts, improved);
+            optimizeSequences(this.terminatingSequences, this.terminatingCosts, improved);
         }
 
         return newTS;
     }
 
-    private <S> Word<I> getShortestHypothesisTS(DFA<S, SymbolWrapper<I>> hyp,
-                                                AccessSequenceTransformer<SymbolWrapper<I>> asTransformer,
-                                                Collection<SymbolWrapper<I>> inputs,
-                                                SymbolWrapper<I> returnSymbol) {
+    private void evaluate(I procedure,
+                          Map<I, List<Word<SymbolWrapper<I>>>> candidates,
+                          Map<I, Double> costs,
+                          Map<I, Word<SymbolWrapper<I>>> bestCandidates,
+                          Set<I> finalized,
+                          PriorityQueue<Pair<Double, I>> queue) {
+
+        final Double currentCost = costs.get(procedure);
+        double bestCost = currentCost == null ? Double.POSITIVE_INFINITY : currentCost;
+        Word<SymbolWrapper<I>> bestCandidate = null;
+
+        for (Word<SymbolWrapper<I>> c : candidates.get(procedure)) {
+            final double cost = getCost(c, costs, finalized);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestCandidate = c;
+            }
+        }
+
+        // otherwise, the queue already contains an entry for the current cost (if any)
+        if (bestCandidate != null) {
+            costs.put(procedure, bestCost);
+            bestCandidates.put(procedure, bestCandidate);
+            queue.add(Pair.of(bestCost, procedure));
+        }
+    }
+
+    /**
+     * Returns the costs of the expansion of the given candidate, or {@link Double#POSITIVE_INFINITY} if the candidate
+     * cannot be expanded (yet).
+     */
+    private double getCost(Word<SymbolWrapper<I>> candidate, Map<I, Double> costs, Set<I> finalized) {
+        double cost = 0;
+
+        for (SymbolWrapper<I> sym : candidate) {
+            final I i = sym.getDelegate();
+
+            if (this.alphabet.isCallSymbol(i)) {
+                if (!finalized.contains(i)) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                cost += getCost(i) + costs.get(i) + getCost(this.alphabet.getReturnSymbol());
+            } else {
+                cost += getCost(i);
+            }
+        }
+
+        return cost;
+    }
+
+    private double getCost(I symbol) {
+        return this.symbolCosts == null ? 1 : this.symbolCosts.applyAsDouble(symbol);
+    }
+
+    /**
+     * Returns the prefix sums of the costs of the given word, or {@code null} if the costs are given by the lengths.
+     */
+    private double @Nullable [] getPrefixCosts(Word<I> word) {
+        if (this.symbolCosts == null) {
+            return null;
+        }
+
+        final double[] result = new double[word.length() + 1];
+        int i = 0;
+
+        for (I sym : word) {
+            result[i + 1] = result[i] + this.symbolCosts.applyAsDouble(sym);
+            i++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the costs of the sub-word from {@code from} (inclusive) to {@code to} (exclusive), given the prefix sums
+     * of {@link #getPrefixCosts(Word)}.
+     */
+    private static double getCost(double @Nullable [] prefixCosts, int from, int to) {
+        return prefixCosts == null ? to - from : prefixCosts[to] - prefixCosts[from];
+    }
+
+    private <S> List<Word<SymbolWrapper<I>>> getHypothesisCandidates(DFA<S, SymbolWrapper<I>> hyp,
+                                                                     AccessSequenceTransformer<SymbolWrapper<I>> asTransformer,
+                                                                     Collection<SymbolWrapper<I>> inputs,
+                                                                     SymbolWrapper<I> returnSymbol) {
         final Iterator<Word<SymbolWrapper<I>>> iter = Covers.stateCoverIterator(hyp, inputs);
-        Word<I> result = null;
+        final List<Word<SymbolWrapper<I>>> result = new ArrayList<>();
 
         while (iter.hasNext()) {
-            final Word<SymbolWrapper<I>> cover = iter.next();
-            final Word<SymbolWrapper<I>> as = asTransformer.transformAccessSequence(cover);
+            final Word<SymbolWrapper<I>> as = asTransformer.transformAccessSequence(iter.next());
             if (hyp.accepts(as.append(returnSymbol))) {
-                final Word<I> ts =
-                        this.alphabet.expand(as.transform(SymbolWrapper::getDelegate), terminatingSequences::get);
-                if (result == null || result.size() > ts.size()) {
-                    result = ts;
-                }
-
+                result.add(as);
             }
         }
 
         return result;
     }
 
-    private void optimizeSequences(final Map<I, Word<I>> sequences) {
+    private void optimizeSequences(final Map<I, Word<I>> sequences,
+                                   final Map<I, Double> sequenceCosts,
+                                   final Set<I> improvedProcedures) {
         for (final Map.Entry<I, Word<I>> entry : sequences.entrySet()) {
             final Word<I> currentSequence = entry.getValue();
-            final Word<I> minimized = minifyWellMatched(currentSequence);
 
-            if (minimized.size() < currentSequence.size()) {
-                sequences.put(entry.getKey(), minimized);
+            if (!containsAny(currentSequence, improvedProcedures)) {
+                continue;
+            }
+
+            final Pair<Word<I>, Double> minimized = minifyWellMatched(currentSequence);
+
+            if (minimized.getSecond() < sequenceCosts.get(entry.getKey())) {
+                updateSequence(sequences, sequenceCosts, entry.getKey(), minimized.getFirst(), minimized.getSecond());
             }
         }
     }
 
-    private void extractPotentialTerminatingSequences(Word<I> input, Set<I> newProcedures) {
-        for (int i = 0; i < input.size(); i++) {
-            final I sym = input.getSymbol(i);
+    private static <I> boolean containsAny(Word<I> sequence, Set<I> symbols) {
+        for (I i : sequence) {
+            if (symbols.contains(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateSequence(Map<I, Word<I>> sequences,
+                                Map<I, Double> sequenceCosts,
+                                I procedure,
+                                Word<I> sequence,
+                                double cost) {
+        sequences.put(procedure, sequence);
+        sequenceCosts.put(procedure, cost);
+        this.version++;
+    }
+
+    private void extractPotentialTerminatingSequences(NestedWordIndex<I> index, Set<I> newProcedures) {
+        final Word<I> input = index.getWord();
+        final double[] prefixCosts = getPrefixCosts(input);
+        int i = 0;
 
+        // iterate instead of using random access, because the input may be a compressed word
+        for (I sym : input) {
             if (this.alphabet.isCallSymbol(sym)) {
 
-                final int returnIdx = this.alphabet.findReturnIndex(input, i + 1);
+                final int returnIdx = index.getMatchingReturn(i);
 
                 if (returnIdx > 0) {
-                    final Word<I> potentialTermSeq = input.subWord(i + 1, returnIdx);
-                    final Word<I> currentTermSeq = this.terminatingSequences.get(sym);
+                    final double potentialCost = getCost(prefixCosts, i + 1, returnIdx);
+                    final Double currentCost = this.terminatingCosts.get(sym);
 
-                    if (currentTermSeq == null) {
+                    if (currentCost == null) {
                         newProcedures.add(sym);
-                        this.terminatingSequences.put(sym, potentialTermSeq);
-                    } else if (potentialTermSeq.size() < currentTermSeq.size()) {
-                        this.terminatingSequences.put(sym, potentialTermSeq);
+                    }
+
+                    if (currentCost == null || potentialCost < currentCost) {
+                        updateSequence(this.terminatingSequences,
+                                       this.terminatingCosts,
+                                       sym,
+                                       input.subWord(i + 1, returnIdx),
+                                       potentialCost);
                     }
                 }
             }
+            i++;
         }
     }
 
-    private void extractPotentialAccessSequences(Word<I> input, Set<I> newCalls) {
-
-        final List<I> asBuilder = new ArrayList<>(input.size());
+    private void extractPotentialAccessSequences(NestedWordIndex<I> index, Set<I> newCalls) {
 
-        for (int i = 0; i < input.size(); i++) {
+        final Word<I> input = index.getWord();
+        // the access sequence of the current position consists of these parts and the run of the input since runStart.
+        // Closed calls only reference the current terminating sequence, so that nested sequences are shared
+        final List<Word<I>> parts = new ArrayList<>();
+        final Deque<CallFrame<I>> stack = new ArrayDeque<>();
+        int runStart = 0;
+        double asCost = 0;
+        int i = 0;
 
-            final I sym = input.getSymbol(i);
+        // iterate instead of using random access, because the input may be a compressed word
+        for (I sym : input) {
 
             if (this.alphabet.isCallSymbol(sym)) {
 
-                final Word<I> currentAccSeq = this.accessSequences.get(sym);
+                stack.push(new CallFrame<>(sym, i, parts.size(), runStart, asCost));
+                final Double currentCost = this.accessCosts.get(sym);
 
-                if (currentAccSeq == null) {
+                if (currentCost == null) {
                     newCalls.add(sym);
-                    this.accessSequences.put(sym, Word.fromList(asBuilder));
-                } else if (asBuilder.size() < currentAccSeq.size()) {
-                    this.accessSequences.put(sym, Word.fromList(asBuilder));
                 }
-            } else if (this.alphabet.isReturnSymbol(sym)) {
-                // update asBuilder
-                final int callIdx = alphabet.findCallIndex(asBuilder, asBuilder.size());
-                final I procedure = asBuilder.get(callIdx);
-                asBuilder.subList(callIdx + 1, asBuilder.size()).clear();
-                asBuilder.addAll(terminatingSequences.get(procedure).asList());
+
+                if (currentCost == null || asCost < currentCost) {
+                    final List<Word<I>> asParts = new ArrayList<>(parts.size() + 1);
+                    asParts.addAll(parts);
+                    asParts.add(input.subWord(runStart, i));
+                    updateSequence(this.accessSequences, this.accessCosts, sym, CompressedWord.of(asParts), asCost);
+                }
+            } else if (this.alphabet.isReturnSymbol(sym) && !stack.isEmpty()) {
+                // replace the contents of the closed call with the terminating sequence
+                final CallFrame<I> frame = stack.pop();
+                parts.subList(frame.numParts, parts.size()).clear();
+                parts.add(input.subWord(frame.runStart, frame.callIdx + 1));
+                parts.add(terminatingSequences.get(frame.procedure));
+                // the return symbol starts the next run
+                runStart = i;
+                asCost = frame.cost + getCost(frame.procedure) + terminatingCosts.get(frame.procedure);
             }
 
-            asBuilder.add(sym);
+            asCost += getCost(sym);
+            i++;
         }
     }
 
-    @SuppressWarnings("PMD.AvoidReassigningLoopVariables") // we want to skip ahead here
-    private Word<I> minifyWellMatched(Word<I> input) {
+    /**
+     * Replaces all closed calls of the given word with the current terminating sequences and returns the resulting
+     * word together with its costs.
+     */
+    private Pair<Word<I>, Double> minifyWellMatched(Word<I> input) {
 
         if (input.isEmpty()) {
-            return Word.epsilon();
+            return Pair.of(Word.epsilon(), 0d);
         }
 
-        final WordBuilder<I> wb = new WordBuilder<>(input.size());
-
-        for (int i = 0; i < input.size(); i++) {
-
-            final I sym = input.getSymbol(i);
-
-            wb.append(sym);
-
-            if (this.alphabet.isCallSymbol(sym)) {
-                final int returnIdx = this.alphabet.findReturnIndex(input, i + 1);
-
-                if (returnIdx > -1) {
-                    wb.append(terminatingSequences.get(sym));
-                    wb.append(alphabet.getReturnSymbol());
-                    i = returnIdx; // next loop iteration starts _after_ the return symbol
+        final List<Word<I>> parts = new ArrayList<>();
+        final I returnSymbol = alphabet.getReturnSymbol();
+        final Word<I> returnWord = Word.fromLetter(returnSymbol);
+        int runStart = 0;
+        double cost = 0;
+
+        final NestedWordIndex<I> index = new NestedWordIndex<>(this.alphabet, input);
+        int i = 0;
+
+        // iterate instead of using random access, because the input may be a compressed word
+        for (I sym : input) {
+            if (i >= runStart) {
+                cost += getCost(sym);
+
+                if (this.alphabet.isCallSymbol(sym)) {
+                    final int returnIdx = index.getMatchingReturn(i);
+
+                    if (returnIdx > -1) {
+                        // only reference the terminating sequence, so that nested sequences are shared
+                        parts.add(input.subWord(runStart, i + 1));
+                        parts.add(terminatingSequences.get(sym));
+                        parts.add(returnWord);
+                        cost += terminatingCosts.get(sym) + getCost(returnSymbol);
+                        runStart = returnIdx + 1; // skip ahead to the symbol _after_ the return symbol
+                    }
                 }
             }
+            i++;
         }
 
-        return wb.toWord();
+        parts.add(input.subWord(runStart));
+
+        return Pair.of(CompressedWord.of(parts), cost);
+    }
+
+    /**
+     * The state of the access sequence construction at a call symbol of a counterexample.
+     */
+    private static final class CallFrame<I> {
+
+        private final I procedure;
+        private final int callIdx;
+        // the number of parts and the start of the current run before the call
+        private final int numParts;
+        private final int runStart;
+        // the costs of the access sequence before the call
+        private final double cost;
+
+        CallFrame(I procedure, int callIdx, int numParts, int runStart, double cost) {
+            this.procedure = procedure;
+            this.callIdx = callIdx;
+            this.numParts = numParts;
+            this.runStart = runStart;
+            this.cost = cost;
+        }
     }
 }
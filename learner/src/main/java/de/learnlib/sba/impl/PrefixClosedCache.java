@@ -0,0 +1,148 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A trie-based cache for the answers of a prefix-closed language: if a word is accepted, all of its prefixes are
+ * accepted, and if a word is rejected, all of its extensions are rejected. Hence, a single insertion may answer many
+ * subsequent lookups.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class PrefixClosedCache<I> {
+
+    private final Node<I> root = new Node<>();
+    private long size;
+
+    /**
+     * Looks up the answer for the given word.
+     *
+     * @param word
+     *         the word to look up
+     *
+     * @return {@link Boolean#TRUE} if the word (or an extension of it) is known to be accepted, {@link Boolean#FALSE}
+     * if the word (or a prefix of it) is known to be rejected, and {@code null} if no answer is known
+     */
+    public @Nullable Boolean lookup(Word<I> word) {
+        Node<I> node = root;
+
+        for (I sym : word) {
+            if (node.rejected) {
+                return Boolean.FALSE;
+            }
+
+            node = node.getChild(sym);
+
+            if (node == null) {
+                return null;
+            }
+        }
+
+        if (node.rejected) {
+            return Boolean.FALSE;
+        }
+
+        return node.accepted ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Stores the answer for the given word.
+     *
+     * @param word
+     *         the word
+     * @param accepted
+     *         whether the word is accepted
+     */
+    public void insert(Word<I> word, boolean accepted) {
+        Node<I> node = root;
+
+        for (I sym : word) {
+            if (node.rejected) {
+                // the word is already implied to be rejected
+                return;
+            }
+
+            if (accepted) {
+                node.accepted = true;
+            }
+
+            final Node<I> child = node.getChild(sym);
+
+            if (child == null) {
+                node = node.addChild(sym);
+                this.size++;
+            } else {
+                node = child;
+            }
+        }
+
+        if (accepted) {
+            node.accepted = true;
+        } else {
+            node.rejected = true;
+            // all extensions are implied to be rejected
+            node.children = null;
+        }
+    }
+
+    /**
+     * Returns the number of nodes that have been created since the last {@link #clear()}. Since the nodes of
+     * extensions of rejected words are discarded, this is an upper bound for the number of nodes of the cache.
+     *
+     * @return the number of created nodes
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all stored answers.
+     */
+    public void clear() {
+        this.root.children = null;
+        this.root.accepted = false;
+        this.root.rejected = false;
+        this.size = 0;
+    }
+
+    private static final class Node<I> {
+
+        private @Nullable Map<I, Node<I>> children;
+        private boolean accepted;
+        private boolean rejected;
+
+        @Nullable Node<I> getChild(I input) {
+            return children == null ? null : children.get(input);
+        }
+
+        Node<I> addChild(I input) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            final Node<I> child = new Node<>();
+            children.put(input, child);
+            return child;
+        }
+    }
+}
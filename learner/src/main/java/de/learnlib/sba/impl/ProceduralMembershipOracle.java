@@ -15,24 +15,53 @@
 package de.learnlib.sba.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import de.learnlib.sba.api.ATChangeListener;
 import de.learnlib.sba.api.ATProvider;
 import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.Query;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.Word;
-import net.automatalib.words.WordBuilder;
 
-public class ProceduralMembershipOracle<I> implements MembershipOracle<SymbolWrapper<I>, Boolean> {
+/**
+ * A {@link MembershipOracle} that transforms the local queries of a single procedure into global queries by embedding
+ * them into the access sequence of the procedure and expanding nested calls with their terminating sequences.
+ * <p>
+ * The expansions of the access sequence and the terminating sequences are cached for the current {@link
+ * ATProvider#getVersion() version} of the {@link ATProvider}. If the oracle is registered as an {@link
+ * ATChangeListener} (see {@link SnapshotATProvider#addChangeListener(ATChangeListener)}), only the expansions of the
+ * announced procedures are evicted on a version change. Otherwise, all expansions are evicted.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class ProceduralMembershipOracle<I>
+        implements MembershipOracle<SymbolWrapper<I>, Boolean>, ATChangeListener<I> {
 
     private final SPAAlphabet<I> alphabet;
     private final MembershipOracle<I, Boolean> delegate;
     private final I procedure;
     private final ATProvider<I> atManager;
 
+    private final PrefixClosedCache<SymbolWrapper<I>> cache;
+
+    // cached expansions of the access and terminating sequences, valid for the given version of the ATProvider
+    private long version;
+    private Word<I> prefix;
+    private final Word<I>[] callExpansions;
+
+    // the changes that have been announced (possibly by another thread) but not yet applied to the cached expansions
+    private final Object changeLock;
+    private final BitSet changedCalls;
+    private boolean prefixChanged;
+    private long announcedVersion;
+
     public ProceduralMembershipOracle(SPAAlphabet<I> alphabet,
                                       MembershipOracle<I, Boolean> delegate,
                                       I procedure,
@@ -41,21 +70,88 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<SymbolWra
         this.delegate = delegate;
         this.procedure = procedure;
         this.atManager = atManager;
+        this.cache = new PrefixClosedCache<>();
+        this.callExpansions = newWordArray(alphabet.getNumCalls());
+        this.version = -1;
+        this.changeLock = new Object();
+        this.changedCalls = new BitSet(alphabet.getNumCalls());
+        this.announcedVersion = ATProvider.UNVERSIONED;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <I> Word<I>[] newWordArray(int size) {
+        return new Word[size];
     }
 
     @Override
     public void processQueries(Collection<? extends Query<SymbolWrapper<I>, Boolean>> collection) {
-        final List<Query<I, Boolean>> transformedQueries = new ArrayList<>(collection.size());
+        final List<TransformedQuery> transformedQueries = new ArrayList<>(collection.size());
+
+        // only re-validate the cached expansions if the sequences have changed since the last batch (or if the
+        // provider does not track changes)
+        final long currentVersion = atManager.getVersion();
+        if (currentVersion == ATProvider.UNVERSIONED || currentVersion != this.version) {
+            invalidateExpansions(currentVersion);
+            this.version = currentVersion;
+        }
 
         for (final Query<SymbolWrapper<I>, Boolean> q : collection) {
-            if (isWellDefined(q)) {
-                transformedQueries.add(new TransformedQuery(q));
-            } else {
+            if (!isWellDefined(q)) {
                 q.answer(false);
+                continue;
+            }
+
+            // local answers do not depend on the chosen access and terminating sequences
+            final Boolean cached = this.cache.lookup(q.getInput());
+            if (cached != null) {
+                q.answer(cached);
+            } else {
+                transformedQueries.add(new TransformedQuery(q));
+            }
+        }
+
+        if (!transformedQueries.isEmpty()) {
+            this.delegate.processQueries(transformedQueries);
+
+            // update the cache on the calling thread, as the delegate may answer the queries from other threads
+            for (TransformedQuery q : transformedQueries) {
+                this.cache.insert(q.originalQuery.getInput(), q.output);
+            }
+        }
+    }
+
+    @Override
+    public void sequencesChanged(long version, Set<I> accessSequences, Set<I> terminatingSequences) {
+        synchronized (this.changeLock) {
+            if (accessSequences.contains(this.procedure)) {
+                this.prefixChanged = true;
+            }
+            for (I call : terminatingSequences) {
+                this.changedCalls.set(alphabet.getCallSymbolIndex(call));
             }
+            this.announcedVersion = Math.max(this.announcedVersion, version);
         }
+    }
 
-        this.delegate.processQueries(transformedQueries);
+    private void invalidateExpansions(long currentVersion) {
+        synchronized (this.changeLock) {
+            // the announcements only cover all changes if the current version has already been announced. Since
+            // nothing is cached before the first batch, changes prior to the registration do not matter
+            if (currentVersion != ATProvider.UNVERSIONED && this.announcedVersion >= currentVersion) {
+                if (this.prefixChanged) {
+                    this.prefix = null;
+                }
+                for (int i = this.changedCalls.nextSetBit(0); i >= 0; i = this.changedCalls.nextSetBit(i + 1)) {
+                    this.callExpansions[i] = null;
+                }
+            } else {
+                this.prefix = null;
+                Arrays.fill(this.callExpansions, null);
+            }
+
+            this.prefixChanged = false;
+            this.changedCalls.clear();
+        }
     }
 
     private boolean isWellDefined(Query<SymbolWrapper<I>, Boolean> q) {
@@ -73,29 +169,63 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<SymbolWra
     }
 
     private Word<I> transformLocalQuery(Word<SymbolWrapper<I>> query) {
-        final WordBuilder<I> builder = new WordBuilder<>();
-        builder.append(atManager.getAccessSequence(this.procedure));
-        builder.append(this.procedure);
+        final int length = query.length();
+        final List<Word<I>> parts = new ArrayList<>();
+        parts.add(getPrefix());
 
-        final Iterator<SymbolWrapper<I>> iter = query.iterator();
-        while (iter.hasNext()) {
-            final SymbolWrapper<I> w = iter.next();
+        // the fragments are only referenced, so that nested terminating sequences are not copied for every query
+        int runStart = 0;
+        for (int idx = 0; idx < length - 1; idx++) {
+            final SymbolWrapper<I> w = query.getSymbol(idx);
             final I i = w.getDelegate();
-            builder.append(i);
-            if (alphabet.isCallSymbol(i) && iter.hasNext()) {
+            if (alphabet.isCallSymbol(i)) {
                 assert w.isTerminating();
-                builder.append(atManager.getTerminatingSequence(i));
-                builder.append(alphabet.getReturnSymbol());
+                parts.add(query.subWord(runStart, idx).transform(SymbolWrapper::getDelegate));
+                parts.add(getCallExpansion(i));
+                runStart = idx + 1;
             }
         }
+        parts.add(query.subWord(runStart).transform(SymbolWrapper::getDelegate));
+
+        return CompressedWord.of(parts);
+    }
+
+    /**
+     * Returns the expanded prefix of each global query, i.e. the access sequence of the procedure followed by the
+     * procedure's call symbol.
+     */
+    private Word<I> getPrefix() {
+        if (this.prefix == null) {
+            final Word<I> as = atManager.getAccessSequence(this.procedure);
+            this.prefix = CompressedWord.of(as, Word.fromLetter(this.procedure));
+        }
+
+        return this.prefix;
+    }
+
+    /**
+     * Returns the expansion of a nested call, i.e. the call symbol followed by its terminating sequence and the return
+     * symbol.
+     */
+    private Word<I> getCallExpansion(I call) {
+        final int idx = alphabet.getCallSymbolIndex(call);
+        Word<I> expansion = this.callExpansions[idx];
+
+        if (expansion == null) {
+            expansion = CompressedWord.of(Word.fromLetter(call),
+                                          atManager.getTerminatingSequence(call),
+                                          Word.fromLetter(alphabet.getReturnSymbol()));
+            this.callExpansions[idx] = expansion;
+        }
 
-        return builder.toWord();
+        return expansion;
     }
 
     private class TransformedQuery extends Query<I, Boolean> {
 
         private final Query<SymbolWrapper<I>, Boolean> originalQuery;
         private final Word<I> transformedQuery;
+        private boolean output;
 
         TransformedQuery(Query<SymbolWrapper<I>, Boolean> originalQuery) {
             this.originalQuery = originalQuery;
@@ -104,6 +234,7 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<SymbolWra
 
         @Override
         public void answer(Boolean output) {
+            this.output = output;
             originalQuery.answer(output);
         }
 
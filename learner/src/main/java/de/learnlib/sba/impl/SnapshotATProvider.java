@@ -0,0 +1,218 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.learnlib.sba.api.ATChangeListener;
+import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.NestedWordIndex;
+import com.google.common.collect.Maps;
+import de.learnlib.api.AccessSequenceTransformer;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+
+/**
+ * An {@link ATProvider} that allows concurrent readers. All updates are forwarded to a delegate provider (under a
+ * lock) and afterwards the access and terminating sequences of the delegate are published as an immutable snapshot via
+ * a volatile reference. Hence, reading sequences (e.g. while transforming the queries of several procedures
+ * concurrently) never blocks and never observes a partially updated provider.
+ * <p>
+ * Each published snapshot has a new {@link #getVersion() version} and registered {@link ATChangeListener}s are
+ * notified about the procedures whose sequences have changed.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class SnapshotATProvider<I> implements ATProvider<I> {
+
+    private final SPAAlphabet<I> alphabet;
+    private final ATProvider<I> delegate;
+    private final List<ATChangeListener<I>> listeners;
+
+    // the procedures for which the delegate provides an access sequence
+    private final Set<I> accessibleProcedures;
+    private long delegateVersion;
+
+    private volatile Snapshot<I> snapshot;
+
+    public SnapshotATProvider(SPAAlphabet<I> alphabet, ATProvider<I> delegate) {
+        this.alphabet = alphabet;
+        this.delegate = delegate;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.accessibleProcedures = new HashSet<>();
+        // no delegate version has been published yet
+        this.delegateVersion = Long.MIN_VALUE;
+        this.snapshot = new Snapshot<>(0, Collections.emptyMap(), Collections.emptyMap());
+
+        // take over the sequences that the delegate already provides
+        for (I procedure : alphabet.getCallAlphabet()) {
+            if (delegate.hasAccessSequence(procedure)) {
+                this.accessibleProcedures.add(procedure);
+            }
+        }
+
+        synchronized (this) {
+            publish();
+        }
+    }
+
+    @Override
+    public Word<I> getAccessSequence(I procedure) {
+        final Snapshot<I> current = this.snapshot;
+        assert current.accessSequences.containsKey(procedure);
+        return current.accessSequences.get(procedure);
+    }
+
+    @Override
+    public Word<I> getTerminatingSequence(I procedure) {
+        final Snapshot<I> current = this.snapshot;
+        assert current.terminatingSequences.containsKey(procedure);
+        return current.terminatingSequences.get(procedure);
+    }
+
+    @Override
+    public boolean hasTerminatingSequence(I procedure) {
+        return this.snapshot.terminatingSequences.containsKey(procedure);
+    }
+
+    @Override
+    public boolean hasAccessSequence(I procedure) {
+        return this.snapshot.accessSequences.containsKey(procedure);
+    }
+
+    @Override
+    public long getVersion() {
+        return this.snapshot.version;
+    }
+
+    @Override
+    public synchronized Pair<Set<I>, Set<I>> scanPositiveCounterexample(Word<I> counterexample) {
+        final Pair<Set<I>, Set<I>> result = this.delegate.scanPositiveCounterexample(counterexample);
+        this.accessibleProcedures.addAll(result.getFirst());
+        publish();
+        return result;
+    }
+
+    @Override
+    public synchronized Pair<Set<I>, Set<I>> scanPositiveCounterexample(NestedWordIndex<I> counterexample) {
+        final Pair<Set<I>, Set<I>> result = this.delegate.scanPositiveCounterexample(counterexample);
+        this.accessibleProcedures.addAll(result.getFirst());
+        publish();
+        return result;
+    }
+
+    @Override
+    public synchronized Set<I> scanRefinedProcedures(
+            Map<I, ? extends DFA<?, SymbolWrapper<I>>> procedures,
+            Map<I, ? extends AccessSequenceTransformer<SymbolWrapper<I>>> providers,
+            Collection<SymbolWrapper<I>> inputs) {
+        final Set<I> result = this.delegate.scanRefinedProcedures(procedures, providers, inputs);
+        publish();
+        return result;
+    }
+
+    /**
+     * Registers a listener that is notified (on the updating thread) whenever a new snapshot has been published.
+     *
+     * @param listener
+     *         the listener to add
+     */
+    public void addChangeListener(ATChangeListener<I> listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered listener.
+     *
+     * @param listener
+     *         the listener to remove
+     */
+    public void removeChangeListener(ATChangeListener<I> listener) {
+        this.listeners.remove(listener);
+    }
+
+    private void publish() {
+        assert Thread.holdsLock(this);
+
+        final long currentDelegateVersion = this.delegate.getVersion();
+        // unversioned delegates are compared sequence by sequence below
+        if (currentDelegateVersion != UNVERSIONED && currentDelegateVersion == this.delegateVersion) {
+            return;
+        }
+        this.delegateVersion = currentDelegateVersion;
+
+        final Snapshot<I> old = this.snapshot;
+        final Map<I, Word<I>> accessSequences = Maps.newHashMapWithExpectedSize(this.accessibleProcedures.size());
+        final Map<I, Word<I>> terminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        final Set<I> changedAS = new HashSet<>();
+        final Set<I> changedTS = new HashSet<>();
+
+        for (I procedure : this.accessibleProcedures) {
+            final Word<I> as = this.delegate.getAccessSequence(procedure);
+            accessSequences.put(procedure, as);
+            // sequences are immutable, so a changed sequence is detected by identity
+            if (old.accessSequences.get(procedure) != as) {
+                changedAS.add(procedure);
+            }
+        }
+
+        for (I procedure : alphabet.getCallAlphabet()) {
+            if (this.delegate.hasTerminatingSequence(procedure)) {
+                final Word<I> ts = this.delegate.getTerminatingSequence(procedure);
+                terminatingSequences.put(procedure, ts);
+                if (old.terminatingSequences.get(procedure) != ts) {
+                    changedTS.add(procedure);
+                }
+            }
+        }
+
+        if (changedAS.isEmpty() && changedTS.isEmpty()) {
+            return;
+        }
+
+        final Snapshot<I> next = new Snapshot<>(old.version + 1,
+                                                Collections.unmodifiableMap(accessSequences),
+                                                Collections.unmodifiableMap(terminatingSequences));
+        this.snapshot = next;
+
+        final Set<I> unmodifiableAS = Collections.unmodifiableSet(changedAS);
+        final Set<I> unmodifiableTS = Collections.unmodifiableSet(changedTS);
+        for (ATChangeListener<I> l : this.listeners) {
+            l.sequencesChanged(next.version, unmodifiableAS, unmodifiableTS);
+        }
+    }
+
+    private static final class Snapshot<I> {
+
+        private final long version;
+        private final Map<I, Word<I>> accessSequences;
+        private final Map<I, Word<I>> terminatingSequences;
+
+        Snapshot(long version, Map<I, Word<I>> accessSequences, Map<I, Word<I>> terminatingSequences) {
+            this.version = version;
+            this.accessSequences = accessSequences;
+            this.terminatingSequences = terminatingSequences;
+        }
+    }
+}
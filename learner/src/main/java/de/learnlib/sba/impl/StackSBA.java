@@ -17,8 +17,10 @@ package de.learnlib.sba.impl;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.ts.simple.SimpleDTS;
 import net.automatalib.words.SPAAlphabet;
@@ -141,4 +143,9 @@ public class StackSBA<S, I> implements SBA<StackSBAState<I, S>, I>, SimpleDTS<St
     public Map<I, DFA<?, I>> getProcedures() {
         return Collections.unmodifiableMap(procedures);
     }
+
+    @Override
+    public SBARunner<I> createRunner() {
+        return new StackSBARunner<>(alphabet, initialCall, procedures, Function.identity());
+    }
 }
\ No newline at end of file
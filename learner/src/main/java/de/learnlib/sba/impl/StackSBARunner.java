@@ -0,0 +1,194 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import de.learnlib.sba.api.SBARunner;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.SPAAlphabet;
+
+/**
+ * An {@link SBARunner} for the stack-based SBA implementations ({@link StackSBA} and {@link MappedStackSBA}) that
+ * stores the stack contents in (growable) arrays instead of chains of {@link StackSBAState}s. The semantics mirror the
+ * respective {@code getTransition} methods.
+ *
+ * @param <S>
+ *         procedural state type
+ * @param <I>
+ *         input symbol type
+ * @param <J>
+ *         procedural input symbol type
+ */
+final class StackSBARunner<S, I, J> implements SBARunner<I> {
+
+    private static final int INIT = 0;
+    private static final int RUNNING = 1;
+    private static final int TERM = 2;
+    private static final int SINK = 3;
+
+    private final SPAAlphabet<I> alphabet;
+    private final I initialCall;
+    private final Map<I, DFA<S, J>> procedures;
+    private final Function<I, J> mapping;
+
+    private DFA<S, J>[] models;
+    private S[] states;
+    private int depth;
+    private int status;
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the input alphabet
+     * @param initialCall
+     *         the initial procedure
+     * @param procedures
+     *         the procedures
+     * @param mapping
+     *         the translation of input symbols to the input symbols of the procedures
+     */
+    @SuppressWarnings("unchecked")
+    StackSBARunner(SPAAlphabet<I> alphabet, I initialCall, Map<I, DFA<S, J>> procedures, Function<I, J> mapping) {
+        this.alphabet = alphabet;
+        this.initialCall = initialCall;
+        this.procedures = procedures;
+        this.mapping = mapping;
+        this.models = new DFA[16];
+        this.states = (S[]) new Object[16];
+        this.status = INIT;
+    }
+
+    @Override
+    public boolean step(I input) {
+        if (status == SINK || status == TERM) {
+            status = SINK;
+        } else if (alphabet.isInternalSymbol(input)) {
+            if (status == INIT) {
+                status = SINK;
+            } else {
+                final DFA<S, J> model = models[depth - 1];
+                final S next = model.getTransition(states[depth - 1], mapping.apply(input));
+
+                // undefined internal transition
+                if (next == null || !model.isAccepting(next)) {
+                    status = SINK;
+                } else {
+                    states[depth - 1] = next;
+                }
+            }
+        } else if (alphabet.isCallSymbol(input)) {
+            stepCall(input);
+        } else if (alphabet.isReturnSymbol(input)) {
+            if (status == INIT) {
+                status = SINK;
+            } else {
+                final DFA<S, J> model = models[depth - 1];
+                final S succ = model.getSuccessor(states[depth - 1], mapping.apply(input));
+
+                // cannot return, reject word
+                if (succ == null || !model.isAccepting(succ)) {
+                    status = SINK;
+                } else {
+                    models[--depth] = null;
+                    states[depth] = null;
+                    if (depth == 0) {
+                        status = TERM;
+                    }
+                }
+            }
+        } else {
+            status = SINK;
+        }
+
+        return isAccepting();
+    }
+
+    private void stepCall(I input) {
+        if (status == INIT && !Objects.equals(initialCall, input)) {
+            status = SINK;
+            return;
+        }
+
+        final DFA<S, J> model = procedures.get(input);
+
+        if (model == null) {
+            status = SINK;
+            return;
+        }
+
+        final S next = model.getInitialState();
+
+        if (next == null) {
+            status = SINK;
+            return;
+        }
+
+        if (status == INIT) {
+            status = RUNNING;
+        } else {
+            // store the procedural successor in the stack so that we don't need to look it up on return symbols
+            final DFA<S, J> p = models[depth - 1];
+            final S succ = p.getSuccessor(states[depth - 1], mapping.apply(input));
+            if (succ == null || !p.isAccepting(succ)) {
+                status = SINK;
+                return;
+            }
+            states[depth - 1] = succ;
+        }
+
+        if (depth == models.length) {
+            models = Arrays.copyOf(models, depth * 2);
+            states = Arrays.copyOf(states, depth * 2);
+        }
+
+        models[depth] = model;
+        states[depth] = next;
+        depth++;
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return status == INIT || status == TERM ||
+               (status == RUNNING && models[depth - 1].isAccepting(states[depth - 1]));
+    }
+
+    @Override
+    public int depth() {
+        return depth;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(models, 0, depth, null);
+        Arrays.fill(states, 0, depth, null);
+        depth = 0;
+        status = INIT;
+    }
+
+    @Override
+    public SBARunner<I> fork() {
+        final StackSBARunner<S, I, J> copy = new StackSBARunner<>(alphabet, initialCall, procedures, mapping);
+        copy.models = Arrays.copyOf(models, models.length);
+        copy.states = Arrays.copyOf(states, states.length);
+        copy.depth = depth;
+        copy.status = status;
+        return copy;
+    }
+}
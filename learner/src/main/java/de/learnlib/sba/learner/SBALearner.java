@@ -14,21 +14,34 @@
  */
 package de.learnlib.sba.learner;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import de.learnlib.sba.api.ATProvider;
 import de.learnlib.sba.api.LearnerProvider;
+import de.learnlib.sba.api.MismatchAnalyzer;
+import de.learnlib.sba.api.NestedWordIndex;
 import de.learnlib.sba.api.ProceduralLearner;
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
 import de.learnlib.sba.impl.AlphabetMapper;
+import de.learnlib.sba.impl.BatchingMembershipOracle;
+import de.learnlib.sba.impl.CounterexampleShortener;
 import de.learnlib.sba.impl.EmptySBA;
 import de.learnlib.sba.impl.MappedStackSBA;
+import de.learnlib.sba.impl.MismatchAnalyzers;
 import de.learnlib.sba.impl.OptimizingATProvider;
 import de.learnlib.sba.impl.ProceduralMembershipOracle;
+import de.learnlib.sba.impl.SnapshotATProvider;
 import de.learnlib.sba.impl.SymbolWrapper;
 import com.google.common.collect.Maps;
 import de.learnlib.api.algorithm.LearningAlgorithm;
@@ -36,27 +49,49 @@ import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.DefaultQuery;
 import de.learnlib.util.MQUtil;
 import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
 import net.automatalib.commons.util.Pair;
 import net.automatalib.util.automata.Automata;
+import net.automatalib.util.automata.copy.AutomatonCopyMethod;
+import net.automatalib.util.automata.copy.AutomatonLowLevelCopy;
+import net.automatalib.words.Alphabet;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.VPDAlphabet.SymbolType;
 import net.automatalib.words.Word;
 import net.automatalib.words.WordBuilder;
 import net.automatalib.words.impl.GrowingMapAlphabet;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
         implements LearningAlgorithm<SBA<?, I>, I, Boolean> {
 
     private final SPAAlphabet<I> alphabet;
     private final MembershipOracle<I, Boolean> oracle;
+    private final MembershipOracle<I, Boolean> proceduralOracle;
+    private final @Nullable BatchingMembershipOracle<I, Boolean> batchingOracle;
     private final LearnerProvider<SymbolWrapper<I>, L> learnerProvider;
     private final ATProvider<I> atManager;
+    private final MismatchAnalyzer analyzer;
+    private final @Nullable ForkJoinPool pool;
+    private final @Nullable CounterexampleShortener<I> shortener;
 
     private final Map<I, L> subLearners;
     private I initialCallSymbol;
 
     private final AlphabetMapper<I> mapper;
 
+    // immutable copies of the procedural hypotheses, only re-computed for procedures whose sub-learner changed
+    private final Map<I, DFA<?, SymbolWrapper<I>>> procedureSnapshots;
+    private final Set<I> dirtyProcedures;
+    private AlphabetMapper<I> mapperSnapshot;
+    private SBA<?, I> hypothesis;
+
+    // the results of analyzing negative counterexamples, which do not depend on the hypothesis
+    private final Map<Word<I>, Integer> analyzedInputs;
+    // the call/return structure of the counterexamples, which is re-used in every refinement round
+    private final Map<Word<I>, NestedWordIndex<I>> indices;
+    private long analysisQueries;
+
     public SBALearner(final SPAAlphabet<I> alphabet,
                       final MembershipOracle<I, Boolean> oracle,
                       final LearnerProvider<SymbolWrapper<I>, L> learnerProvider) {
@@ -67,13 +102,92 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
                       final MembershipOracle<I, Boolean> oracle,
                       final LearnerProvider<SymbolWrapper<I>, L> learnerProvider,
                       final ATProvider<I> atManager) {
+        this(alphabet, oracle, learnerProvider, atManager, MismatchAnalyzers.BINARY_SEARCH);
+    }
+
+    /**
+     * Constructor that refines procedures sequentially and does not shorten counterexamples. The parameters are
+     * described at {@link #SBALearner(SPAAlphabet, MembershipOracle, LearnerProvider, ATProvider, MismatchAnalyzer,
+     * ForkJoinPool, int, long, boolean)}.
+     */
+    public SBALearner(final SPAAlphabet<I> alphabet,
+                      final MembershipOracle<I, Boolean> oracle,
+                      final LearnerProvider<SymbolWrapper<I>, L> learnerProvider,
+                      final ATProvider<I> atManager,
+                      final MismatchAnalyzer analyzer) {
+        this(alphabet, oracle, learnerProvider, atManager, analyzer, null);
+    }
+
+    /**
+     * Constructor that neither batches queries nor shortens counterexamples. The parameters are described at {@link
+     * #SBALearner(SPAAlphabet, MembershipOracle, LearnerProvider, ATProvider, MismatchAnalyzer, ForkJoinPool, int,
+     * long, boolean)}.
+     */
+    public SBALearner(final SPAAlphabet<I> alphabet,
+                      final MembershipOracle<I, Boolean> oracle,
+                      final LearnerProvider<SymbolWrapper<I>, L> learnerProvider,
+                      final ATProvider<I> atManager,
+                      final MismatchAnalyzer analyzer,
+                      final @Nullable ForkJoinPool pool) {
+        this(alphabet, oracle, learnerProvider, atManager, analyzer, pool, 1, 0, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the input alphabet
+     * @param oracle
+     *         the membership oracle
+     * @param learnerProvider
+     *         the provider for the procedural learners
+     * @param atManager
+     *         the provider for access and terminating sequences
+     * @param analyzer
+     *         the strategy for locating the mismatch of negative counterexamples via membership queries. Positive
+     *         counterexamples are analyzed on the hypothesis and do not require any queries.
+     * @param pool
+     *         the pool for refining the sub-learners of different procedures concurrently (see {@link
+     *         #refineHypothesis(Collection)}). If non-null, the given membership oracle needs to be thread-safe. If
+     *         {@code null}, procedures are refined sequentially.
+     * @param batchSize
+     *         the size up to which the (transformed) queries of all procedural learners are collected before being
+     *         forwarded to the membership oracle (see {@link BatchingMembershipOracle}). A value of 1 disables
+     *         batching. Batching is only enabled if a pool is given.
+     * @param lingerMillis
+     *         the maximum time (in milliseconds) a batch waits for further queries before it is forwarded
+     * @param shortenCounterexamples
+     *         whether counterexamples should be shortened (see {@link CounterexampleShortener}) before they are
+     *         analyzed. The verification queries of the shortened counterexamples are counted by {@link
+     *         #getShorteningQueries()}.
+     */
+    public SBALearner(final SPAAlphabet<I> alphabet,
+                      final MembershipOracle<I, Boolean> oracle,
+                      final LearnerProvider<SymbolWrapper<I>, L> learnerProvider,
+                      final ATProvider<I> atManager,
+                      final MismatchAnalyzer analyzer,
+                      final @Nullable ForkJoinPool pool,
+                      final int batchSize,
+                      final long lingerMillis,
+                      final boolean shortenCounterexamples) {
         this.alphabet = alphabet;
         this.oracle = oracle;
+        // without a pool, there is only a single caller and nothing to batch
+        this.batchingOracle =
+                pool != null && batchSize > 1 ? new BatchingMembershipOracle<>(oracle, batchSize, lingerMillis) : null;
+        this.proceduralOracle = this.batchingOracle == null ? oracle : this.batchingOracle;
         this.learnerProvider = learnerProvider;
         this.atManager = atManager;
+        this.analyzer = analyzer;
+        this.pool = pool;
+        this.shortener = shortenCounterexamples ? new CounterexampleShortener<>(alphabet, oracle, atManager) : null;
 
         this.subLearners = Maps.newHashMapWithExpectedSize(this.alphabet.getNumCalls());
         this.mapper = new AlphabetMapper<>(alphabet);
+        this.procedureSnapshots = Maps.newHashMapWithExpectedSize(this.alphabet.getNumCalls());
+        this.dirtyProcedures = new HashSet<>();
+        this.analyzedInputs = new HashMap<>();
+        this.indices = new HashMap<>();
 
         for (I i : this.alphabet.getCallAlphabet()) {
             final SymbolWrapper<I> wrapper = new SymbolWrapper<>(i, false, SymbolType.CALL);
@@ -95,47 +209,143 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
 
     @Override
     public boolean refineHypothesis(DefaultQuery<I, Boolean> defaultQuery) {
+        return refineHypothesis(Collections.singletonList(defaultQuery));
+    }
 
-        boolean changed = this.extractUsefulInformationFromCounterExample(defaultQuery);
+    /**
+     * Refines the hypothesis with multiple counterexamples at once. In each round, all counterexamples are decomposed
+     * into local counterexamples with respect to the current hypothesis, which are then grouped by their procedure. If
+     * this learner has been configured with a {@link ForkJoinPool}, the sub-learners of different procedures are
+     * refined concurrently. Shared state (i.e. the {@link ATProvider} and the alphabet mapping) is only updated between
+     * rounds.
+     *
+     * @param counterexamples
+     *         the counterexamples
+     *
+     * @return {@code true} if the hypothesis has changed, {@code false} otherwise
+     */
+    public boolean refineHypothesis(Collection<? extends DefaultQuery<I, Boolean>> counterexamples) {
+
+        boolean changed = false;
+
+        for (DefaultQuery<I, Boolean> ce : counterexamples) {
+            changed |= this.extractUsefulInformationFromCounterExample(ce);
+        }
+
+        // shorten after scanning the original counterexamples, so that no (shorter) sequences are missed
+        final Collection<? extends DefaultQuery<I, Boolean>> ces = this.shortener == null ?
+                counterexamples :
+                this.shortener.shorten(getHypothesisModel(), counterexamples);
 
-        while (refineHypothesisInternal(defaultQuery)) {
+        while (refineHypothesisInternal(ces)) {
             changed = true;
         }
 
         ensureReturnClosure();
+        this.analyzedInputs.clear();
+        this.indices.clear();
         return changed;
     }
 
-    private boolean refineHypothesisInternal(DefaultQuery<I, Boolean> defaultQuery) {
+    private boolean refineHypothesisInternal(Collection<? extends DefaultQuery<I, Boolean>> counterexamples) {
 
         final SBA<?, I> hypothesis = this.getHypothesisModel();
+        final Map<I, List<DefaultQuery<SymbolWrapper<I>, Boolean>>> localCEs = new HashMap<>();
+
+        for (DefaultQuery<I, Boolean> defaultQuery : counterexamples) {
+            if (!MQUtil.isCounterexample(defaultQuery, hypothesis)) {
+                continue;
+            }
+
+            final Word<I> input = defaultQuery.getInput();
+            final int mismatchIdx = detectMismatchingIdx(hypothesis, input, defaultQuery.getOutput());
+
+            // extract local ce
+            final NestedWordIndex<I> index = getIndex(input);
+            final int callIdx = index.getEnclosingCall(mismatchIdx);
+            final I procedure = input.getSymbol(callIdx);
 
-        if (!MQUtil.isCounterexample(defaultQuery, hypothesis)) {
+            final Word<I> localTrace =
+                    index.getLocalWord(callIdx + 1, mismatchIdx).append(input.getSymbol(mismatchIdx));
+
+            localCEs.computeIfAbsent(procedure, k -> new ArrayList<>())
+                    .add(constructLocalCE(localTrace, defaultQuery.getOutput()));
+        }
+
+        if (localCEs.isEmpty()) {
             return false;
         }
 
-        final Word<I> input = defaultQuery.getInput();
-        final int mismatchIdx = detectMismatchingIdx(hypothesis, input, defaultQuery.getOutput());
+        if (this.pool == null || localCEs.size() == 1) {
+            for (Map.Entry<I, List<DefaultQuery<SymbolWrapper<I>, Boolean>>> e : localCEs.entrySet()) {
+                refineProcedure(this.subLearners.get(e.getKey()), e.getValue());
+            }
+        } else {
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(localCEs.size());
 
-        // extract local ce
-        final int callIdx = this.alphabet.findCallIndex(input, mismatchIdx);
-        final I procedure = input.getSymbol(callIdx);
+            if (this.batchingOracle != null) {
+                this.batchingOracle.setParties(localCEs.size());
+            }
 
-        final Word<I> localTrace = this.alphabet.normalize(input.subWord(callIdx + 1, mismatchIdx), 0)
-                                                .append(input.getSymbol(mismatchIdx));
-        final DefaultQuery<SymbolWrapper<I>, Boolean> localCE = constructLocalCE(localTrace, defaultQuery.getOutput());
+            for (Map.Entry<I, List<DefaultQuery<SymbolWrapper<I>, Boolean>>> e : localCEs.entrySet()) {
+                final L learner = this.subLearners.get(e.getKey());
+                tasks.add(this.pool.submit(() -> {
+                    try {
+                        refineProcedure(learner, e.getValue());
+                    } finally {
+                        // finished tasks no longer contribute to batches, so the remaining ones need not wait for them
+                        if (this.batchingOracle != null) {
+                            this.batchingOracle.deregister();
+                        }
+                    }
+                }));
+            }
 
-        try {
-            boolean localRefinement = this.subLearners.get(procedure).refineHypothesis(localCE);
+            try {
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } catch (RuntimeException | Error e) {
+                // skip pending refinements and wait for running ones, so that no task modifies the sub-learners after
+                // the failure has been propagated
+                for (ForkJoinTask<?> task : tasks) {
+                    task.cancel(false);
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.quietlyJoin();
+                }
+                throw e;
+            } finally {
+                if (this.batchingOracle != null) {
+                    this.batchingOracle.setParties(1);
+                }
+            }
         }
-        catch (AssertionError ae) {
-            throw new IllegalArgumentException(ae);
+
+        for (I procedure : localCEs.keySet()) {
+            this.markDirty(procedure);
         }
-//        assert localRefinement;
 
         return true;
     }
 
+    private void refineProcedure(L learner, List<DefaultQuery<SymbolWrapper<I>, Boolean>> localCEs) {
+        try {
+            for (DefaultQuery<SymbolWrapper<I>, Boolean> localCE : localCEs) {
+                learner.refineHypothesis(localCE);
+            }
+        } catch (AssertionError ae) {
+            throw new IllegalArgumentException(ae);
+        }
+    }
+
+    /**
+     * Returns the current hypothesis. The returned {@link SBA} is an immutable snapshot that is not affected by
+     * subsequent refinements of this learner. Repeated calls without intermediate changes return the same (cached)
+     * instance and after a refinement only the procedures of the changed sub-learners are re-computed.
+     *
+     * @return the current hypothesis
+     */
     @Override
     public SBA<?, I> getHypothesisModel() {
 
@@ -143,7 +353,44 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
             return new EmptySBA<>(this.alphabet);
         }
 
-        return new MappedStackSBA<>(alphabet, initialCallSymbol, getSubModels(), mapper);
+        if (this.hypothesis == null) {
+            for (I procedure : this.dirtyProcedures) {
+                this.procedureSnapshots.put(procedure, copyHypothesis(this.subLearners.get(procedure)));
+            }
+            this.dirtyProcedures.clear();
+
+            if (this.mapperSnapshot == null) {
+                this.mapperSnapshot = new AlphabetMapper<>(this.mapper);
+            }
+
+            this.hypothesis = new MappedStackSBA<>(alphabet,
+                                                   initialCallSymbol,
+                                                   new HashMap<>(this.procedureSnapshots),
+                                                   this.mapperSnapshot);
+        }
+
+        return this.hypothesis;
+    }
+
+    private void markDirty(I procedure) {
+        this.dirtyProcedures.add(procedure);
+        this.hypothesis = null;
+    }
+
+    private void updateMapper(I symbol, SymbolWrapper<I> wrapper) {
+        this.mapper.set(symbol, wrapper);
+        this.mapperSnapshot = null;
+        this.hypothesis = null;
+    }
+
+    private DFA<?, SymbolWrapper<I>> copyHypothesis(L learner) {
+        // freeze the (growing) alphabet of the learner, so that the snapshot is not affected by new symbols
+        final Alphabet<SymbolWrapper<I>> inputs = new GrowingMapAlphabet<>(learner.getInputAlphabet());
+        final CompactDFA<SymbolWrapper<I>> copy = new CompactDFA<>(inputs);
+
+        AutomatonLowLevelCopy.copy(AutomatonCopyMethod.STATE_BY_STATE, learner.getHypothesisModel(), inputs, copy);
+
+        return copy;
     }
 
     private boolean extractUsefulInformationFromCounterExample(DefaultQuery<I, Boolean> defaultQuery) {
@@ -156,33 +403,41 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
         final Word<I> input = defaultQuery.getInput();
 
         // positive CEs should always be rooted at the main procedure
-        this.initialCallSymbol = input.firstSymbol();
+        if (!Objects.equals(this.initialCallSymbol, input.firstSymbol())) {
+            this.initialCallSymbol = input.firstSymbol();
+            this.hypothesis = null;
+        }
 
-        final Pair<Set<I>, Set<I>> newSeqs = atManager.scanPositiveCounterexample(input);
+        final Pair<Set<I>, Set<I>> newSeqs = atManager.scanPositiveCounterexample(getIndex(input));
         final Set<I> newCalls = newSeqs.getFirst();
         final Set<I> newTerms = newSeqs.getSecond();
 
         for (I call : newTerms) {
             final SymbolWrapper<I> sym = new SymbolWrapper<>(call, true, SymbolType.CALL);
-            this.mapper.set(call, sym);
-            for (L learner : this.subLearners.values()) {
-                learner.addAlphabetSymbol(sym);
+            this.updateMapper(call, sym);
+            for (Map.Entry<I, L> e : this.subLearners.entrySet()) {
+                e.getValue().addAlphabetSymbol(sym);
+                this.markDirty(e.getKey());
                 update = true;
             }
         }
 
         for (I sym : newCalls) {
             update = true;
-            final L newLearner = learnerProvider.createProceduralLearner(new GrowingMapAlphabet<>(this.mapper.values()),
-                                                                         new ProceduralMembershipOracle<>(alphabet,
-                                                                                                          oracle,
-                                                                                                          sym,
-                                                                                                          atManager));
+            final ProceduralMembershipOracle<I> mqOracle =
+                    new ProceduralMembershipOracle<>(alphabet, proceduralOracle, sym, atManager);
+            if (atManager instanceof SnapshotATProvider) {
+                // only evict the cached expansions of changed sequences
+                ((SnapshotATProvider<I>) atManager).addChangeListener(mqOracle);
+            }
+            final L newLearner =
+                    learnerProvider.createProceduralLearner(new GrowingMapAlphabet<>(this.mapper.values()), mqOracle);
 
             newLearner.startLearning();
 
             // add new learner here, so that we have an AccessSequenceTransformer available when scanning for shorter ts
             this.subLearners.put(sym, newLearner);
+            this.markDirty(sym);
 
             // try to find a shorter terminating sequence for 'sym' before procedure is added to other hypotheses
             final Set<I> newTS =
@@ -192,9 +447,10 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
 
             for (I call : newTS) {
                 final SymbolWrapper<I> wrapper = new SymbolWrapper<>(call, true, SymbolType.CALL);
-                this.mapper.set(call, wrapper);
-                for (L learner : this.subLearners.values()) {
-                    learner.addAlphabetSymbol(wrapper);
+                this.updateMapper(call, wrapper);
+                for (Map.Entry<I, L> e : this.subLearners.entrySet()) {
+                    e.getValue().addAlphabetSymbol(wrapper);
+                    this.markDirty(e.getKey());
                 }
             }
         }
@@ -202,53 +458,34 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
         return update;
     }
 
-    private Map<I, DFA<?, SymbolWrapper<I>>> getSubModels() {
-        final Map<I, DFA<?, SymbolWrapper<I>>> subModels = Maps.newHashMapWithExpectedSize(this.subLearners.size());
-
-        for (final Map.Entry<I, L> entry : this.subLearners.entrySet()) {
-            subModels.put(entry.getKey(), entry.getValue().getHypothesisModel());
-        }
-
-        return subModels;
+    private NestedWordIndex<I> getIndex(Word<I> input) {
+        return this.indices.computeIfAbsent(input, w -> new NestedWordIndex<>(this.alphabet, w));
     }
 
-    private <S> int detectMismatchingIdx(SBA<S, I> sba, Word<I> input, boolean output) {
+    private int detectMismatchingIdx(SBA<?, I> sba, Word<I> input, boolean output) {
 
         if (output) {
-            S stateIter = sba.getInitialState();
+            final SBARunner<I> runner = sba.createRunner();
             int idx = 0;
 
             for (I i : input) {
-                final S succ = sba.getSuccessor(stateIter, i);
-
-                if (succ == null || !sba.isAccepting(succ)) {
+                if (!runner.step(i)) {
                     return idx;
                 }
-                stateIter = succ;
                 idx++;
             }
         } else {
-            int lower = 0;
-            int upper = input.size() - 1;
-            int result = input.size();
-
-            while (upper - lower > -1) {
-                int mid = lower + (upper - lower) / 2;
-                boolean answer = this.oracle.answerQuery(input.prefix(mid));
-                if (answer) {
-                    lower = mid + 1;
-                } else {
-                    result = mid;
-                    upper = mid - 1;
-                }
-            }
-
-            return result - 1;
+            return this.analyzedInputs.computeIfAbsent(input, this::detectNegativeMismatchingIdx);
         }
 
         throw new IllegalStateException("Could not properly analyze CE");
     }
 
+    private int detectNegativeMismatchingIdx(Word<I> input) {
+        // the empty word is always accepted, the (negative) counterexample is rejected
+        return this.analyzer.analyze(new PrefixOracle(input), 0, input.size());
+    }
+
     private DefaultQuery<SymbolWrapper<I>, Boolean> constructLocalCE(Word<I> input, boolean output) {
 
         final WordBuilder<SymbolWrapper<I>> wb = new WordBuilder<>(input.length());
@@ -259,12 +496,34 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
         return new DefaultQuery<>(wb.toWord(), output);
     }
 
+    /**
+     * Returns the number of membership queries that have been posed for analyzing (negative) counterexamples.
+     *
+     * @return the number of analysis queries
+     */
+    public long getAnalysisQueries() {
+        return this.analysisQueries;
+    }
+
+    /**
+     * Returns the number of membership queries that have been posed for verifying shortened counterexamples.
+     *
+     * @return the number of shortening queries, or 0 if counterexamples are not shortened
+     */
+    public long getShorteningQueries() {
+        return this.shortener == null ? 0 : this.shortener.getVerificationQueries();
+    }
+
     private void ensureReturnClosure() {
-        for (L learner : this.subLearners.values()) {
+        for (Map.Entry<I, L> e : this.subLearners.entrySet()) {
+            final L learner = e.getValue();
             boolean stable = false;
 
             while (!stable) {
                 stable = ensureReturnClosure(learner.getHypothesisModel(), learner.getInputAlphabet(), learner);
+                if (!stable) {
+                    this.markDirty(e.getKey());
+                }
             }
         }
     }
@@ -303,4 +562,59 @@ public class SBALearner<I, L extends ProceduralLearner<SymbolWrapper<I>>>
 
         return true;
     }
+
+    /**
+     * A {@link MismatchAnalyzer.PrefixOracle} for the prefixes of a (negative) counterexample. Due to prefix-closure,
+     * all prefixes up to the longest accepted one are accepted and all prefixes from the shortest rejected one on are
+     * rejected. Hence, we only track these two bounds and answer all implied queries without consulting the oracle.
+     */
+    private class PrefixOracle implements MismatchAnalyzer.PrefixOracle {
+
+        private final Word<I> input;
+        private int longestAccepted;
+        private int shortestRejected;
+
+        PrefixOracle(Word<I> input) {
+            this.input = input;
+            this.longestAccepted = 0;
+            this.shortestRejected = input.size();
+        }
+
+        @Override
+        public boolean accepts(int length) {
+            return accepts(new int[] {length})[0];
+        }
+
+        @Override
+        public boolean[] accepts(int[] lengths) {
+            final boolean[] result = new boolean[lengths.length];
+            final List<DefaultQuery<I, Boolean>> queries = new ArrayList<>(lengths.length);
+
+            for (int l : lengths) {
+                if (l > longestAccepted && l < shortestRejected) {
+                    queries.add(new DefaultQuery<>(input.prefix(l)));
+                }
+            }
+
+            if (!queries.isEmpty()) {
+                oracle.processQueries(queries);
+                analysisQueries += queries.size();
+
+                for (DefaultQuery<I, Boolean> q : queries) {
+                    final int l = q.getInput().length();
+                    if (q.getOutput()) {
+                        longestAccepted = Math.max(longestAccepted, l);
+                    } else {
+                        shortestRejected = Math.min(shortestRejected, l);
+                    }
+                }
+            }
+
+            for (int i = 0; i < lengths.length; i++) {
+                result[i] = lengths[i] <= longestAccepted;
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,302 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.PrefixClosedCache;
+import de.learnlib.api.oracle.EquivalenceOracle;
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An {@link EquivalenceOracle} that checks a (potentially large) test suite against an {@link SBA} hypothesis. The
+ * test suite is split into chunks that are checked concurrently: each chunk is first evaluated on the hypothesis and
+ * against a (prefix-closed) cache of previous answers of the system under learning, and only the tests whose outcome
+ * is not implied by the cache are forwarded (as a single batch) to the membership oracle.
+ * <p>
+ * The chunks are joined in order and the first disagreeing test of the first disagreeing chunk is returned, so the
+ * returned counterexample does not depend on the scheduling of the chunks. Once a counterexample has been confirmed,
+ * chunks with a higher index skip their membership queries, and once the search terminates (either with a
+ * counterexample or an exception), all outstanding chunks skip their membership queries as well. Note that chunks
+ * whose membership queries have already been dispatched are not interrupted, i.e. their (discarded) queries are still
+ * completed in the background. At most a bounded number of chunks is in flight at any time, so that lazily generated
+ * test suites are never fully materialized.
+ * <p>
+ * The cache is shared across calls of {@link #findCounterExample(SBA, Collection)}, since the answers of the system
+ * under learning do not depend on the hypothesis. Its size is bounded by a configurable number of nodes, and it is
+ * cleared whenever this bound is exceeded.
+ * <p>
+ * If a {@link ForkJoinPool} is given, the membership oracle needs to be thread-safe.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public abstract class AbstractParallelSBAEQOracle<I> implements EquivalenceOracle<SBA<?, I>, I, Boolean> {
+
+    /**
+     * The default maximum number of nodes of the cache.
+     */
+    public static final long DEFAULT_CACHE_CAPACITY = 1 << 18;
+
+    private final MembershipOracle<I, Boolean> sul;
+    private final @Nullable ForkJoinPool pool;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final long cacheCapacity;
+
+    // the answers of the system under learning do not depend on the hypothesis and can be re-used across calls
+    private final PrefixClosedCache<I> cache;
+    private final ReadWriteLock cacheLock;
+
+    protected AbstractParallelSBAEQOracle(MembershipOracle<I, Boolean> sul,
+                                          @Nullable ForkJoinPool pool,
+                                          int batchSize) {
+        this(sul, pool, batchSize, pool == null ? 1 : 2 * pool.getParallelism());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sul
+     *         the membership oracle of the system under learning
+     * @param pool
+     *         the pool for checking the chunks concurrently, or {@code null} for checking them sequentially
+     * @param batchSize
+     *         the number of tests per chunk
+     * @param maxInFlight
+     *         the maximum number of chunks that are submitted to the pool but not yet joined
+     */
+    protected AbstractParallelSBAEQOracle(MembershipOracle<I, Boolean> sul,
+                                          @Nullable ForkJoinPool pool,
+                                          int batchSize,
+                                          int maxInFlight) {
+        this(sul, pool, batchSize, maxInFlight, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sul
+     *         the membership oracle of the system under learning
+     * @param pool
+     *         the pool for checking the chunks concurrently, or {@code null} for checking them sequentially
+     * @param batchSize
+     *         the number of tests per chunk
+     * @param maxInFlight
+     *         the maximum number of chunks that are submitted to the pool but not yet joined
+     * @param cacheCapacity
+     *         the maximum number of nodes of the cache (see {@link PrefixClosedCache#size()}), or {@code 0} for
+     *         disabling the cache
+     */
+    protected AbstractParallelSBAEQOracle(MembershipOracle<I, Boolean> sul,
+                                          @Nullable ForkJoinPool pool,
+                                          int batchSize,
+                                          int maxInFlight,
+                                          long cacheCapacity) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size needs to be positive");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The number of in-flight chunks needs to be positive");
+        }
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("The cache capacity must not be negative");
+        }
+
+        this.sul = sul;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.cacheCapacity = cacheCapacity;
+        this.cache = new PrefixClosedCache<>();
+        this.cacheLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Generates the test words for the given hypothesis. The tests are consumed lazily and in order.
+     *
+     * @param hypothesis
+     *         the hypothesis to check
+     * @param alphabet
+     *         the alphabet of the hypothesis
+     *
+     * @return the test words
+     */
+    protected abstract Iterator<Word<I>> generateTestWords(SBA<?, I> hypothesis, SPAAlphabet<I> alphabet);
+
+    @Override
+    public @Nullable DefaultQuery<I, Boolean> findCounterExample(SBA<?, I> hypothesis,
+                                                                 Collection<? extends I> inputs) {
+
+        if (!(inputs instanceof SPAAlphabet)) {
+            throw new IllegalArgumentException("Inputs are not an SPA alphabet");
+        }
+
+        @SuppressWarnings("unchecked")
+        final SPAAlphabet<I> alphabet = (SPAAlphabet<I>) inputs;
+
+        final Iterator<Word<I>> tests = generateTestWords(hypothesis, alphabet);
+        // the index of the first chunk that has confirmed a counterexample
+        final AtomicLong firstFailure = new AtomicLong(Long.MAX_VALUE);
+        long chunkIdx = 0;
+
+        if (this.pool == null) {
+            while (tests.hasNext()) {
+                final DefaultQuery<I, Boolean> ce = checkChunk(hypothesis, nextChunk(tests), chunkIdx++, firstFailure);
+                if (ce != null) {
+                    return ce;
+                }
+            }
+            return null;
+        }
+
+        final Deque<ForkJoinTask<DefaultQuery<I, Boolean>>> inFlight = new ArrayDeque<>(this.maxInFlight);
+
+        try {
+            while (tests.hasNext() || !inFlight.isEmpty()) {
+                while (tests.hasNext() && inFlight.size() < this.maxInFlight) {
+                    final List<Word<I>> chunk = nextChunk(tests);
+                    final long idx = chunkIdx++;
+                    inFlight.add(this.pool.submit(() -> checkChunk(hypothesis, chunk, idx, firstFailure)));
+                }
+
+                final DefaultQuery<I, Boolean> ce = inFlight.poll().join();
+                if (ce != null) {
+                    return ce;
+                }
+            }
+
+            return null;
+        } finally {
+            // outstanding chunks that have already been started skip their membership queries
+            firstFailure.set(Long.MIN_VALUE);
+            for (ForkJoinTask<?> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private List<Word<I>> nextChunk(Iterator<Word<I>> tests) {
+        final List<Word<I>> chunk = new ArrayList<>(this.batchSize);
+
+        while (tests.hasNext() && chunk.size() < this.batchSize) {
+            chunk.add(tests.next());
+        }
+
+        return chunk;
+    }
+
+    private @Nullable DefaultQuery<I, Boolean> checkChunk(SBA<?, I> hypothesis,
+                                                          List<Word<I>> chunk,
+                                                          long chunkIdx,
+                                                          AtomicLong firstFailure) {
+
+        // a preceding chunk has already confirmed a counterexample
+        if (firstFailure.get() < chunkIdx) {
+            return null;
+        }
+
+        final int size = chunk.size();
+        final boolean[] hypOutputs = new boolean[size];
+        final Boolean[] sulOutputs = new Boolean[size];
+
+        if (this.cacheCapacity > 0) {
+            this.cacheLock.readLock().lock();
+            try {
+                for (int i = 0; i < size; i++) {
+                    sulOutputs[i] = this.cache.lookup(chunk.get(i));
+                }
+            } finally {
+                this.cacheLock.readLock().unlock();
+            }
+        }
+
+        // tests after a (cached) counterexample do not need to be queried
+        int limit = size;
+        for (int i = 0; i < limit; i++) {
+            hypOutputs[i] = hypothesis.accepts(chunk.get(i));
+            if (sulOutputs[i] != null && sulOutputs[i] != hypOutputs[i]) {
+                limit = i + 1;
+            }
+        }
+
+        final List<DefaultQuery<I, Boolean>> queries = new ArrayList<>();
+        final List<Integer> queryIndices = new ArrayList<>();
+
+        for (int i = 0; i < limit; i++) {
+            if (sulOutputs[i] == null) {
+                queries.add(new DefaultQuery<>(chunk.get(i)));
+                queryIndices.add(i);
+            }
+        }
+
+        if (!queries.isEmpty()) {
+            // re-check right before dispatching, since the hypothesis checks may take a while
+            if (firstFailure.get() < chunkIdx) {
+                return null;
+            }
+
+            this.sul.processQueries(queries);
+
+            for (int i = 0; i < queries.size(); i++) {
+                sulOutputs[queryIndices.get(i)] = queries.get(i).getOutput();
+            }
+
+            if (this.cacheCapacity > 0) {
+                updateCache(queries);
+            }
+        }
+
+        for (int i = 0; i < limit; i++) {
+            if (sulOutputs[i] != hypOutputs[i]) {
+                firstFailure.accumulateAndGet(chunkIdx, Math::min);
+                return new DefaultQuery<>(chunk.get(i), sulOutputs[i]);
+            }
+        }
+
+        return null;
+    }
+
+    private void updateCache(List<DefaultQuery<I, Boolean>> queries) {
+        this.cacheLock.writeLock().lock();
+        try {
+            for (DefaultQuery<I, Boolean> q : queries) {
+                this.cache.insert(q.getInput(), q.getOutput());
+            }
+
+            // the trie cannot be pruned selectively, so start over once it exceeds its capacity
+            if (this.cache.size() > this.cacheCapacity) {
+                this.cache.clear();
+            }
+        } finally {
+            this.cacheLock.writeLock().unlock();
+        }
+    }
+}
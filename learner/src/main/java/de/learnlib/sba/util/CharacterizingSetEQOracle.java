@@ -0,0 +1,50 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.api.oracle.MembershipOracle;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An {@link AbstractParallelSBAEQOracle} that checks the hypothesis against a fixed (lazily expanded) characterizing
+ * set, e.g. the one of a specification or of a previously learned model (see {@link
+ * SBAUtil#characterizingTests(SBA, SPAAlphabet)}).
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class CharacterizingSetEQOracle<I> extends AbstractParallelSBAEQOracle<I> {
+
+    private final CharacterizingTests<I> tests;
+
+    public CharacterizingSetEQOracle(MembershipOracle<I, Boolean> sul,
+                                     CharacterizingTests<I> tests,
+                                     @Nullable ForkJoinPool pool,
+                                     int batchSize) {
+        super(sul, pool, batchSize);
+        this.tests = tests;
+    }
+
+    @Override
+    protected Iterator<Word<I>> generateTestWords(SBA<?, I> hypothesis, SPAAlphabet<I> alphabet) {
+        return this.tests.iterator();
+    }
+}
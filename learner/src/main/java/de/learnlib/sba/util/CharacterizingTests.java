@@ -0,0 +1,272 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.CompressedWord;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+
+/**
+ * The (lazily generated) test suite of {@link SBAUtil#characterizingSet(SBA, SPAAlphabet, ATSequences)}. Only the
+ * (local) state covers and characterizing sets of the procedures are stored, each test is expanded on demand from its
+ * index. Hence, the tests can be iterated in constant memory and (disjoint) index ranges can be consumed concurrently.
+ * <p>
+ * Tests are ordered by procedure (in the iteration order of {@link SBA#getProcedures()}), state cover, input symbol
+ * (in the order of the alphabet), and characterizing word.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public final class CharacterizingTests<I> implements Iterable<Word<I>> {
+
+    private final SPAAlphabet<I> alphabet;
+    private final Map<I, Word<I>> terminatingSequences;
+    private final List<ProcedureTests<I>> procedures;
+
+    // the index of the first test of each procedure, followed by the total number of tests
+    private final long[] offsets;
+
+    public CharacterizingTests(SBA<?, I> sul, SPAAlphabet<I> alphabet, ATSequences<I> ats) {
+        this.alphabet = alphabet;
+        this.terminatingSequences = ats.terminatingSequences;
+        this.procedures = new ArrayList<>(sul.getProcedures().size());
+        this.offsets = new long[sul.getProcedures().size() + 1];
+
+        final Set<I> eligibleInputs = new HashSet<>(ats.terminatingSequences.keySet());
+        eligibleInputs.addAll(alphabet.getInternalAlphabet());
+
+        int idx = 0;
+        for (Entry<I, DFA<?, I>> e : sul.getProcedures().entrySet()) {
+            final DFA<?, I> dfa = e.getValue();
+            final List<Word<I>> sCov = Automata.stateCover(dfa, eligibleInputs);
+            final List<Word<I>> cSet = Automata.characterizingSet(dfa, alphabet);
+
+            // each input symbol is either followed by all characterizing words or (if it cannot terminate) by none
+            final int[] symbolOffsets = new int[alphabet.size() + 1];
+            for (int i = 0; i < alphabet.size(); i++) {
+                symbolOffsets[i + 1] = symbolOffsets[i] + (isEligible(alphabet.getSymbol(i)) ? cSet.size() : 1);
+            }
+
+            final ProcedureTests<I> tests =
+                    new ProcedureTests<>(ats.accessSequences.get(e.getKey()), sCov, cSet, symbolOffsets);
+
+            this.procedures.add(tests);
+            this.offsets[idx + 1] = this.offsets[idx] + tests.size();
+            idx++;
+        }
+    }
+
+    /**
+     * Returns the number of tests.
+     *
+     * @return the number of tests
+     */
+    public long size() {
+        return this.offsets[this.offsets.length - 1];
+    }
+
+    /**
+     * Expands the test at the given index.
+     *
+     * @param index
+     *         the index of the test
+     *
+     * @return the test
+     */
+    public Word<I> get(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(Long.toString(index));
+        }
+
+        final int procIdx = floorIndex(this.offsets, this.procedures.size(), index);
+        final ProcedureTests<I> tests = this.procedures.get(procIdx);
+
+        final long local = index - this.offsets[procIdx];
+        final int rowSize = tests.symbolOffsets[alphabet.size()];
+        final Word<I> cov = tests.stateCover.get((int) (local / rowSize));
+        final int column = (int) (local % rowSize);
+
+        final int symIdx = floorIndex(tests.symbolOffsets, alphabet.size(), column);
+        final I sym = alphabet.getSymbol(symIdx);
+
+        if (isEligible(sym)) {
+            final Word<I> cs = tests.characterizingSet.get(column - tests.symbolOffsets[symIdx]);
+            final Word<I> test = cov.append(sym).concat(cs);
+            return CompressedWord.of(tests.accessSequence,
+                                     CompressedWord.expand(alphabet, test, terminatingSequences::get));
+        } else {
+            return CompressedWord.of(tests.accessSequence,
+                                     CompressedWord.expand(alphabet, cov, terminatingSequences::get),
+                                     Word.fromLetter(sym));
+        }
+    }
+
+    @Override
+    public Iterator<Word<I>> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<Word<I>> spliterator() {
+        return new TestSpliterator(0, size());
+    }
+
+    /**
+     * Returns a sequential stream of all tests.
+     *
+     * @return the stream of tests
+     */
+    public Stream<Word<I>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a sequential stream of the tests in the given index range, e.g. for distributing chunks of the test
+     * suite to different workers.
+     *
+     * @param fromIndex
+     *         the index of the first test (inclusive)
+     * @param toIndex
+     *         the index of the last test (exclusive)
+     *
+     * @return the stream of tests
+     */
+    public Stream<Word<I>> stream(long fromIndex, long toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("[" + fromIndex + ", " + toIndex + ')');
+        }
+        return StreamSupport.stream(new TestSpliterator(fromIndex, toIndex), false);
+    }
+
+    private boolean isEligible(I input) {
+        return !alphabet.isCallSymbol(input) || terminatingSequences.containsKey(input);
+    }
+
+    /**
+     * Returns the largest index {@code i < length} such that {@code offsets[i] <= value}.
+     */
+    private static int floorIndex(long[] offsets, int length, long value) {
+        int low = 0;
+        int high = length - 1;
+
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static int floorIndex(int[] offsets, int length, int value) {
+        int low = 0;
+        int high = length - 1;
+
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static final class ProcedureTests<I> {
+
+        private final Word<I> accessSequence;
+        private final List<Word<I>> stateCover;
+        private final List<Word<I>> characterizingSet;
+        // the index of the first test of each input symbol within a row (state cover), followed by the row size
+        private final int[] symbolOffsets;
+
+        ProcedureTests(Word<I> accessSequence,
+                       List<Word<I>> stateCover,
+                       List<Word<I>> characterizingSet,
+                       int[] symbolOffsets) {
+            this.accessSequence = accessSequence;
+            this.stateCover = stateCover;
+            this.characterizingSet = characterizingSet;
+            this.symbolOffsets = symbolOffsets;
+        }
+
+        long size() {
+            return (long) stateCover.size() * symbolOffsets[symbolOffsets.length - 1];
+        }
+    }
+
+    private final class TestSpliterator implements Spliterator<Word<I>> {
+
+        private long index;
+        private final long fence;
+
+        TestSpliterator(long index, long fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Word<I>> action) {
+            if (index < fence) {
+                action.accept(get(index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Word<I>> trySplit() {
+            final long mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+
+            final Spliterator<Word<I>> prefix = new TestSpliterator(index, mid);
+            this.index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.api.oracle.EquivalenceOracle;
+import de.learnlib.api.query.DefaultQuery;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A variant of the {@link SimulatorEQOracle} that only re-checks the procedures of a hypothesis that may have changed
+ * since the previous call. For each procedure that has been verified (i.e. for which no separating word exists), the
+ * oracle stores a structural fingerprint of the hypothesis procedure (a canonical encoding of its reachable states and
+ * transitions) together with the terminating call symbols the check depended on. A verified procedure is skipped as
+ * long as its fingerprint, the availability of its access and terminating sequence, and its relevant terminating
+ * symbols are unchanged.
+ * <p>
+ * A call symbol is relevant for a procedure if one of the two procedures (of the reference system or the hypothesis)
+ * accepts it in a reachable accepting state, because all rejecting states of a prefix-closed procedure are equivalent.
+ * Hence, skipping a procedure never changes the returned counterexample compared to the {@link SimulatorEQOracle}.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class IncrementalSimulatorEQOracle<I> implements EquivalenceOracle<SBA<?, I>, I, Boolean> {
+
+    private final SBA<?, I> sba;
+
+    // the sequences of the (fixed) reference system only need to be computed once per alphabet
+    private SPAAlphabet<I> alphabet;
+    private ATSequences<I> sequences;
+    private Map<I, Set<I>> referenceCalls;
+
+    private final Map<I, Verification<I>> verified;
+
+    public IncrementalSimulatorEQOracle(SBA<?, I> sba) {
+        this.sba = sba;
+        this.verified = new HashMap<>();
+    }
+
+    @Override
+    public @Nullable DefaultQuery<I, Boolean> findCounterExample(SBA<?, I> hypothesis, Collection<? extends I> inputs) {
+
+        if (!(inputs instanceof SPAAlphabet)) {
+            throw new IllegalArgumentException("Inputs are not an SPA alphabet");
+        }
+
+        @SuppressWarnings("unchecked")
+        final SPAAlphabet<I> alphabet = (SPAAlphabet<I>) inputs;
+
+        if (this.alphabet != alphabet) {
+            this.sequences = SBAUtil.computeATSequences(sba, alphabet);
+            this.referenceCalls = new HashMap<>();
+            for (I procedure : alphabet.getCallAlphabet()) {
+                final DFA<?, I> p = sba.getProcedures().get(procedure);
+                final Set<I> calls = new HashSet<>();
+                if (p != null) {
+                    fingerprint(p, alphabet, calls);
+                }
+                this.referenceCalls.put(procedure, calls);
+            }
+            this.verified.clear();
+            this.alphabet = alphabet;
+        }
+
+        final ATSequences<I> hypSequences = SBAUtil.computeATSequences(hypothesis, alphabet);
+        final Set<I> terminating = new HashSet<>(this.sequences.terminatingSequences.keySet());
+        terminating.retainAll(hypSequences.terminatingSequences.keySet());
+
+        for (I procedure : alphabet.getCallAlphabet()) {
+            final Verification<I> verification =
+                    verify(procedure, hypothesis.getProcedures().get(procedure), hypSequences, terminating);
+
+            if (verification.matches(this.verified.get(procedure))) {
+                continue;
+            }
+
+            final Word<I> sep =
+                    SBAUtil.findSeparatingWord(procedure, sba, this.sequences, hypothesis, hypSequences, alphabet);
+
+            if (sep != null) {
+                this.verified.remove(procedure);
+                return new DefaultQuery<>(sep, sba.computeOutput(sep));
+            }
+
+            this.verified.put(procedure, verification);
+        }
+
+        return null;
+    }
+
+    private Verification<I> verify(I procedure,
+                                   @Nullable DFA<?, I> hypProcedure,
+                                   ATSequences<I> hypSequences,
+                                   Set<I> terminating) {
+        final Set<I> dependencies = new HashSet<>(this.referenceCalls.get(procedure));
+        final int[] fingerprint = hypProcedure == null ? null : fingerprint(hypProcedure, alphabet, dependencies);
+        dependencies.retainAll(terminating);
+
+        return new Verification<>(fingerprint,
+                                  hypSequences.accessSequences.containsKey(procedure),
+                                  hypSequences.terminatingSequences.containsKey(procedure),
+                                  dependencies);
+    }
+
+    /**
+     * Computes a canonical encoding of the reachable part of the given procedure by numbering its states in
+     * breadth-first order. Additionally, collects the call symbols that are accepted in a reachable accepting state.
+     */
+    private static <S, I> int[] fingerprint(DFA<S, I> dfa, SPAAlphabet<I> alphabet, Set<I> acceptedCalls) {
+        final S init = dfa.getInitialState();
+
+        if (init == null) {
+            return new int[0];
+        }
+
+        final Map<S, Integer> ids = new HashMap<>();
+        final List<S> states = new ArrayList<>();
+        final int[] encoding = new int[dfa.size() * (alphabet.size() + 1)];
+        int pos = 0;
+
+        ids.put(init, 0);
+        states.add(init);
+
+        for (int i = 0; i < states.size(); i++) {
+            final S state = states.get(i);
+            final boolean accepting = dfa.isAccepting(state);
+
+            encoding[pos++] = accepting ? 1 : 0;
+
+            for (I sym : alphabet) {
+                final S succ = dfa.getSuccessor(state, sym);
+
+                if (succ == null) {
+                    encoding[pos++] = -1;
+                    continue;
+                }
+
+                Integer id = ids.get(succ);
+                if (id == null) {
+                    id = states.size();
+                    ids.put(succ, id);
+                    states.add(succ);
+                }
+                encoding[pos++] = id;
+
+                if (accepting && alphabet.isCallSymbol(sym) && dfa.isAccepting(succ)) {
+                    acceptedCalls.add(sym);
+                }
+            }
+        }
+
+        return Arrays.copyOf(encoding, pos);
+    }
+
+    private static final class Verification<I> {
+
+        private final int @Nullable [] fingerprint;
+        private final boolean hasAccessSequence;
+        private final boolean hasTerminatingSequence;
+        private final Set<I> dependencies;
+
+        Verification(int @Nullable [] fingerprint,
+                     boolean hasAccessSequence,
+                     boolean hasTerminatingSequence,
+                     Set<I> dependencies) {
+            this.fingerprint = fingerprint;
+            this.hasAccessSequence = hasAccessSequence;
+            this.hasTerminatingSequence = hasTerminatingSequence;
+            this.dependencies = Collections.unmodifiableSet(dependencies);
+        }
+
+        boolean matches(@Nullable Verification<I> other) {
+            return other != null && this.hasAccessSequence == other.hasAccessSequence &&
+                   this.hasTerminatingSequence == other.hasTerminatingSequence &&
+                   this.dependencies.equals(other.dependencies) && Arrays.equals(this.fingerprint, other.fingerprint);
+        }
+    }
+}
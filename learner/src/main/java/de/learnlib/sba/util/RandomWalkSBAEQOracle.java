@@ -0,0 +1,172 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.CompressedWord;
+import de.learnlib.api.oracle.MembershipOracle;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An {@link AbstractParallelSBAEQOracle} that tests random, well-matched words. Each test enters a (uniformly chosen)
+ * procedure of the hypothesis via its access sequence and continues with a random walk of local symbols, in which each
+ * call symbol is skipped over via its terminating sequence. A walk ends after a random number of steps, with a return
+ * symbol, or with a call symbol that has no terminating sequence (yet).
+ * <p>
+ * The sequences are taken from the {@link ATProvider} of the learner. If the hypothesis contains no procedures yet,
+ * the walks start with a (uniformly chosen) call symbol, in order to find an initial positive counterexample.
+ * <p>
+ * The tests of each call are generated from a random seed that is drawn from a random generator initialized with the
+ * given seed. Since the tests are checked in order (see {@link AbstractParallelSBAEQOracle}), a sequence of calls
+ * returns the same counterexamples for the same seed, regardless of the number of workers of the pool.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class RandomWalkSBAEQOracle<I> extends AbstractParallelSBAEQOracle<I> {
+
+    private final ATProvider<I> atProvider;
+    private final int minLength;
+    private final int maxLength;
+    private final int maxTests;
+    private final Random random;
+
+    /**
+     * Constructor.
+     *
+     * @param sul
+     *         the membership oracle of the system under learning
+     * @param atProvider
+     *         the provider of access and terminating sequences
+     * @param minLength
+     *         the minimum number of (local) steps of each walk
+     * @param maxLength
+     *         the maximum number of (local) steps of each walk
+     * @param maxTests
+     *         the number of tests per call
+     * @param seed
+     *         the seed for generating the tests
+     * @param pool
+     *         the pool for checking the tests concurrently, or {@code null} for checking them sequentially
+     * @param batchSize
+     *         the number of tests per batch
+     */
+    public RandomWalkSBAEQOracle(MembershipOracle<I, Boolean> sul,
+                                 ATProvider<I> atProvider,
+                                 int minLength,
+                                 int maxLength,
+                                 int maxTests,
+                                 long seed,
+                                 @Nullable ForkJoinPool pool,
+                                 int batchSize) {
+        super(sul, pool, batchSize);
+
+        if (minLength < 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid length bounds [" + minLength + ", " + maxLength + ']');
+        }
+
+        this.atProvider = atProvider;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.maxTests = maxTests;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    protected Iterator<Word<I>> generateTestWords(SBA<?, I> hypothesis, SPAAlphabet<I> alphabet) {
+        // the access sequence of each procedure followed by its call symbol
+        final List<Word<I>> prefixes = new ArrayList<>(alphabet.getNumCalls());
+
+        for (I procedure : alphabet.getCallAlphabet()) {
+            if (hypothesis.getProcedures().containsKey(procedure)) {
+                prefixes.add(CompressedWord.of(atProvider.getAccessSequence(procedure), Word.fromLetter(procedure)));
+            }
+        }
+
+        if (prefixes.isEmpty()) {
+            for (I procedure : alphabet.getCallAlphabet()) {
+                prefixes.add(Word.fromLetter(procedure));
+            }
+        }
+
+        return new WalkIterator(alphabet, prefixes, new Random(random.nextLong()));
+    }
+
+    private Word<I> generateTestWord(SPAAlphabet<I> alphabet, List<Word<I>> prefixes, Random rand) {
+        final Word<I> prefix = prefixes.get(rand.nextInt(prefixes.size()));
+        final int length = minLength + rand.nextInt(maxLength - minLength + 1);
+        final WordBuilder<I> wb = new WordBuilder<>(length);
+
+        for (int i = 0; i < length; i++) {
+            final I sym = alphabet.getSymbol(rand.nextInt(alphabet.size()));
+            wb.append(sym);
+
+            if (alphabet.isReturnSymbol(sym) ||
+                alphabet.isCallSymbol(sym) && !atProvider.hasTerminatingSequence(sym)) {
+                break;
+            }
+        }
+
+        if (wb.isEmpty()) {
+            return prefix;
+        }
+
+        // do not expand the last symbol, because it may be an open call
+        final Word<I> local = wb.toWord();
+        return CompressedWord.of(prefix,
+                                 CompressedWord.expand(alphabet, local.prefix(-1), atProvider::getTerminatingSequence),
+                                 local.suffix(1));
+    }
+
+    private final class WalkIterator implements Iterator<Word<I>> {
+
+        private final SPAAlphabet<I> alphabet;
+        private final List<Word<I>> prefixes;
+        private final Random rand;
+        private int remaining;
+
+        WalkIterator(SPAAlphabet<I> alphabet, List<Word<I>> prefixes, Random rand) {
+            this.alphabet = alphabet;
+            this.prefixes = prefixes;
+            this.rand = rand;
+            this.remaining = maxTests;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Word<I> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return generateTestWord(alphabet, prefixes, rand);
+        }
+    }
+}
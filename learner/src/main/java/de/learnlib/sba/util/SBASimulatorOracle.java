@@ -0,0 +1,153 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.Query;
+
+/**
+ * A {@link MembershipOracle} that answers queries by simulating a given {@link SBA}. In contrast to a plain simulator
+ * oracle, a batch of queries is arranged in a prefix trie, so that shared prefixes (e.g. the access sequences of
+ * procedures) are simulated only once and the {@link SBARunner runs} of the {@link SBA} are {@link SBARunner#fork()
+ * forked} at the branches of the trie. Hence, the trie walk benefits from optimized runners such as the one of a
+ * {@link de.learnlib.sba.impl.CompiledStackSBA}.
+ * <p>
+ * Since the language of an {@link SBA} is prefix-closed, all queries whose input extends a rejected prefix are answered
+ * negatively without further simulation.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class SBASimulatorOracle<I> implements MembershipOracle<I, Boolean> {
+
+    private final SBA<?, I> sba;
+
+    public SBASimulatorOracle(SBA<?, I> sba) {
+        this.sba = sba;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Boolean>> queries) {
+        if (queries.size() == 1) {
+            final Query<I, Boolean> q = queries.iterator().next();
+            q.answer(sba.computeSuffixOutput(q.getPrefix(), q.getSuffix()));
+        } else if (!queries.isEmpty()) {
+            processQueries(sba, queries);
+        }
+    }
+
+    private static <I> void processQueries(SBA<?, I> sba, Collection<? extends Query<I, Boolean>> queries) {
+
+        final Node<I> root = new Node<>();
+
+        for (Query<I, Boolean> q : queries) {
+            Node<I> node = root;
+            for (I i : q.getPrefix()) {
+                node = node.getOrCreateChild(i);
+            }
+            for (I i : q.getSuffix()) {
+                node = node.getOrCreateChild(i);
+            }
+            node.addQuery(q);
+        }
+
+        final Deque<Node<I>> nodes = new ArrayDeque<>();
+        final Deque<SBARunner<I>> runners = new ArrayDeque<>();
+
+        nodes.push(root);
+        runners.push(sba.createRunner());
+
+        while (!nodes.isEmpty()) {
+            final Node<I> node = nodes.pop();
+            final SBARunner<I> runner = runners.pop();
+
+            if (!runner.isAccepting()) {
+                answerSubtree(node);
+                continue;
+            }
+
+            node.answer(true);
+
+            if (node.children != null) {
+                final Iterator<Map.Entry<I, Node<I>>> iter = node.children.entrySet().iterator();
+
+                while (iter.hasNext()) {
+                    final Map.Entry<I, Node<I>> e = iter.next();
+                    // the last child continues with the runner of its parent, all others operate on copies
+                    final SBARunner<I> succ = iter.hasNext() ? runner.fork() : runner;
+
+                    succ.step(e.getKey());
+                    nodes.push(e.getValue());
+                    runners.push(succ);
+                }
+            }
+        }
+    }
+
+    private static <I> void answerSubtree(Node<I> root) {
+        final Deque<Node<I>> nodes = new ArrayDeque<>();
+        nodes.push(root);
+
+        while (!nodes.isEmpty()) {
+            final Node<I> node = nodes.pop();
+            node.answer(false);
+
+            if (node.children != null) {
+                for (Node<I> child : node.children.values()) {
+                    nodes.push(child);
+                }
+            }
+        }
+    }
+
+    private static final class Node<I> {
+
+        private Map<I, Node<I>> children;
+        private List<Query<I, Boolean>> queries;
+
+        Node<I> getOrCreateChild(I input) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(input, k -> new Node<>());
+        }
+
+        void addQuery(Query<I, Boolean> query) {
+            if (queries == null) {
+                queries = new ArrayList<>(1);
+            }
+            queries.add(query);
+        }
+
+        void answer(boolean output) {
+            if (queries != null) {
+                for (Query<I, Boolean> q : queries) {
+                    q.answer(output);
+                }
+            }
+        }
+    }
+}
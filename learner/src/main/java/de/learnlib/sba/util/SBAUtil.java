@@ -18,35 +18,37 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
 
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.CompressedWord;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.automata.fsa.MutableDFA;
 import net.automatalib.automata.fsa.impl.compact.CompactDFA;
 import net.automatalib.automata.spa.SPA;
 import net.automatalib.automata.spa.StackSPA;
+import net.automatalib.commons.util.Pair;
 import net.automatalib.ts.TransitionPredicate;
 import net.automatalib.util.automata.Automata;
 import net.automatalib.util.automata.copy.AutomatonCopyMethod;
 import net.automatalib.util.automata.copy.AutomatonLowLevelCopy;
-import net.automatalib.util.automata.cover.Covers;
 import net.automatalib.util.automata.fsa.DFAs;
 import net.automatalib.util.automata.fsa.MutableDFAs;
 import net.automatalib.util.automata.predicates.TransitionPredicates;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.Word;
-import net.automatalib.words.WordBuilder;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class SBAUtil {
@@ -69,58 +71,54 @@ public class SBAUtil {
         return new ATSequences<>(accessSequences, terminatingSequences);
     }
 
+    /**
+     * Computes a terminating sequence for each procedure of the given {@link SBA} (if one exists).
+     * <p>
+     * The procedures are explored with a single (interruptible) breadth-first search each: a call transition is only
+     * traversed once the called procedure has a terminating sequence, and the searches of all procedures that are
+     * blocked on a call are resumed as soon as this call obtains a terminating sequence. Hence, each transition of each
+     * procedure is analyzed at most once.
+     *
+     * @param sba
+     *         the {@link SBA} to analyze
+     * @param alphabet
+     *         the alphabet of the {@link SBA}
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the terminating sequences of all procedures for which a terminating sequence exists
+     */
     public static <I> Map<I, Word<I>> computeTerminatingSequences(SBA<?, I> sba, SPAAlphabet<I> alphabet) {
 
         final Map<I, DFA<?, I>> procedures = sba.getProcedures();
         final Map<I, Word<I>> terminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        final Map<I, TerminatingSequenceSearch<?, I>> searches = Maps.newHashMapWithExpectedSize(procedures.size());
 
-        // initial internal sequences
         for (I procedure : alphabet.getCallAlphabet()) {
             final DFA<?, I> dfa = procedures.get(procedure);
-
             if (dfa != null) {
-                final Iterator<Word<I>> iter = Covers.stateCoverIterator(dfa, alphabet.getInternalAlphabet());
-                while (iter.hasNext()) {
-                    final Word<I> trace = iter.next();
-                    if (dfa.accepts(trace.append(alphabet.getReturnSymbol()))) {
-                        terminatingSequences.put(procedure, trace);
-                        break;
-                    }
-                }
+                searches.put(procedure, new TerminatingSequenceSearch<>(alphabet, dfa));
             }
         }
 
-        final Set<I> remainingProcedures = new HashSet<>(alphabet.getCallAlphabet());
-        remainingProcedures.removeAll(terminatingSequences.keySet());
-
-        final Set<I> eligibleInputs = new HashSet<>(alphabet.getInternalAlphabet());
-        eligibleInputs.addAll(terminatingSequences.keySet());
+        // the procedures whose searches may progress
+        final Deque<I> worklist = new ArrayDeque<>(searches.keySet());
+        final Set<I> scheduled = new HashSet<>(searches.keySet());
 
-        boolean stable = false;
+        while (!worklist.isEmpty()) {
+            final I procedure = worklist.poll();
+            scheduled.remove(procedure);
 
-        while (!stable) {
-            stable = true;
+            final TerminatingSequenceSearch<?, I> search = searches.get(procedure);
+            final Word<I> trace = search.advance(terminatingSequences.keySet());
 
-            for (final I i : new ArrayList<>(remainingProcedures)) {
+            if (trace != null) {
+                terminatingSequences.put(procedure, CompressedWord.expand(alphabet, trace, terminatingSequences::get));
+                searches.remove(procedure);
 
-                final DFA<?, I> dfa = procedures.get(i);
-
-                if (dfa == null) {
-                    // for non-existing procedures we cannot compute any terminating sequences
-                    remainingProcedures.remove(i);
-                } else {
-                    final Iterator<Word<I>> iter = Covers.stateCoverIterator(dfa, eligibleInputs);
-
-                    while (iter.hasNext()) {
-                        final Word<I> trace = iter.next();
-
-                        if (dfa.accepts(trace.append(alphabet.getReturnSymbol()))) {
-                            terminatingSequences.put(i, alphabet.expand(trace, terminatingSequences::get));
-                            remainingProcedures.remove(i);
-                            eligibleInputs.add(i);
-                            stable = false;
-                            break;
-                        }
+                for (Entry<I, TerminatingSequenceSearch<?, I>> e : searches.entrySet()) {
+                    if (e.getValue().unblock(procedure) && scheduled.add(e.getKey())) {
+                        worklist.add(e.getKey());
                     }
                 }
             }
@@ -129,6 +127,21 @@ public class SBAUtil {
         return terminatingSequences;
     }
 
+    /**
+     * Computes an access sequence for each procedure of the given {@link SBA} (if one exists) with a single
+     * breadth-first search per accessible procedure.
+     *
+     * @param sba
+     *         the {@link SBA} to analyze
+     * @param alphabet
+     *         the alphabet of the {@link SBA}
+     * @param terminatingSequences
+     *         the terminating sequences of the {@link SBA}, see {@link #computeTerminatingSequences(SBA, SPAAlphabet)}
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the access sequences of all procedures for which an access sequence exists
+     */
     public static <I> Map<I, Word<I>> computeAccessSequences(SBA<?, I> sba,
                                                              SPAAlphabet<I> alphabet,
                                                              Map<I, Word<I>> terminatingSequences) {
@@ -140,90 +153,80 @@ public class SBAUtil {
 
         final Map<I, DFA<?, I>> procedures = sba.getProcedures();
         final Map<I, Word<I>> accessSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
-        final Set<I> finishedProcedures = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls());
 
         // initial value
         accessSequences.put(initialProcedure, Word.fromLetter(initialProcedure));
-        finishedProcedures.add(initialProcedure);
 
         final Deque<I> pendingProcedures = new ArrayDeque<>();
         pendingProcedures.add(initialProcedure);
 
-        while (!pendingProcedures.isEmpty()) {
+        while (!pendingProcedures.isEmpty() && accessSequences.size() < alphabet.getNumCalls()) {
             final I i = pendingProcedures.pop();
             final DFA<?, I> dfa = procedures.get(i);
 
             if (dfa != null) {
-                final Collection<I> newProcedures = discoverAccessSequences(alphabet,
-                                                                            i,
-                                                                            dfa,
-                                                                            finishedProcedures,
-                                                                            accessSequences,
-                                                                            terminatingSequences);
-                pendingProcedures.addAll(newProcedures);
+                discoverAccessSequences(alphabet, i, dfa, accessSequences, terminatingSequences, pendingProcedures);
             }
         }
 
         return accessSequences;
     }
 
-    private static <S, I> Collection<I> discoverAccessSequences(SPAAlphabet<I> alphabet,
-                                                                I procedure,
-                                                                DFA<S, I> dfa,
-                                                                Set<I> finishedProcedures,
-                                                                Map<I, Word<I>> accessSequences,
-                                                                Map<I, Word<I>> terminatingSequences) {
+    private static <S, I> void discoverAccessSequences(SPAAlphabet<I> alphabet,
+                                                       I procedure,
+                                                       DFA<S, I> dfa,
+                                                       Map<I, Word<I>> accessSequences,
+                                                       Map<I, Word<I>> terminatingSequences,
+                                                       Collection<I> newProcedures) {
+
+        final S init = dfa.getInitialState();
 
-        final List<I> newAS = new ArrayList<>();
-        final Iterator<Word<I>> transitionCoverIterator = Covers.transitionCoverIterator(dfa, alphabet);
+        if (init == null || !dfa.isAccepting(init)) {
+            return;
+        }
+
+        final Word<I> as = accessSequences.get(procedure);
+        final Map<S, Word<I>> reached = new HashMap<>();
+        final Deque<S> queue = new ArrayDeque<>();
 
-        tc:
-        while (transitionCoverIterator.hasNext()) {
-            final Word<I> trace = transitionCoverIterator.next();
+        reached.put(init, Word.epsilon());
+        queue.add(init);
 
-            S iter = dfa.getInitialState();
+        while (!queue.isEmpty()) {
+            final S state = queue.poll();
+            final Word<I> trace = reached.get(state);
 
-            for (int i = 0; i < trace.length(); i++) {
-                final I input = trace.getSymbol(i);
+            for (I input : alphabet) {
+                if (alphabet.isReturnSymbol(input)) {
+                    continue;
+                }
+
+                final S succ = dfa.getSuccessor(state, input);
+
+                // if we encounter a failing transition we land in a sink state and don't need to analyse it further
+                if (succ == null || !dfa.isAccepting(succ)) {
+                    continue;
+                }
 
                 if (alphabet.isCallSymbol(input)) {
-                    if (!finishedProcedures.contains(input)) {
-
-                        final S succ = dfa.getSuccessor(iter, input);
-
-                        if (dfa.isAccepting(succ)) {
-
-                            final WordBuilder<I> accessBuilder = new WordBuilder<>();
-                            final Word<I> as = accessSequences.get(procedure);
-                            accessBuilder.append(as);
-                            accessBuilder.append(alphabet.expand(trace.subWord(0, i), terminatingSequences::get));
-                            accessBuilder.append(input);
-
-                            accessSequences.put(input, accessBuilder.toWord());
-
-                            finishedProcedures.add(input);
-                            newAS.add(input);
-                        } else {
-                            // If we encounter a failing call we land in a sink state and don't need to analyse further
-                            // transitions. Therefore, skip the remaining trace.
-                            continue tc;
-                        }
-                    } else if (!terminatingSequences.containsKey(input)) {
-                        // If we encounter a call symbol for which we do not have a terminating sequence,
-                        // all local access sequences of future call symbols cannot be expanded properly.
-                        // Therefore, skip the remaining trace.
-                        continue tc;
+                    if (!accessSequences.containsKey(input)) {
+                        final Word<I> expanded = CompressedWord.expand(alphabet, trace, terminatingSequences::get);
+                        accessSequences.put(input, CompressedWord.of(as, expanded, Word.fromLetter(input)));
+                        newProcedures.add(input);
                     }
-                }
 
-                iter = dfa.getSuccessor(iter, input);
-            }
+                    // without a terminating sequence, we cannot continue after the call
+                    if (!terminatingSequences.containsKey(input)) {
+                        continue;
+                    }
+                }
 
-            if (finishedProcedures.containsAll(alphabet.getCallAlphabet())) {
-                return newAS;
+                if (!reached.containsKey(succ)) {
+                    reached.put(succ, trace.append(input));
+                    queue.add(succ);
+                }
             }
         }
-        return newAS;
     }
 
     public static <I> boolean isPrefixAndReturnClosed(SBA<?, I> sba, SPAAlphabet<I> alphabet) {
@@ -283,63 +286,257 @@ public class SBAUtil {
     }
 
     public static <I> @Nullable Word<I> findSeparatingWord(SBA<?, I> sba1, SBA<?, I> sba2, SPAAlphabet<I> alphabet) {
+        return findSeparatingWord(sba1,
+                                  computeATSequences(sba1, alphabet),
+                                  sba2,
+                                  computeATSequences(sba2, alphabet),
+                                  alphabet);
+    }
 
-        final ATSequences<I> at1 = computeATSequences(sba1, alphabet);
-        final ATSequences<I> at2 = computeATSequences(sba2, alphabet);
+    /**
+     * Variant of {@link #findSeparatingWord(SBA, SBA, SPAAlphabet)} that uses pre-computed {@link ATSequences}, e.g.
+     * to avoid re-computing the sequences of a fixed reference system for every hypothesis.
+     *
+     * @param sba1
+     *         the first {@link SBA}
+     * @param at1
+     *         the sequences of the first {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param sba2
+     *         the second {@link SBA}
+     * @param at2
+     *         the sequences of the second {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param alphabet
+     *         the alphabet of both {@link SBA}s
+     * @param <I>
+     *         input symbol type
+     *
+     * @return a separating word, or {@code null} if the {@link SBA}s are equivalent
+     */
+    public static <I> @Nullable Word<I> findSeparatingWord(SBA<?, I> sba1,
+                                                           ATSequences<I> at1,
+                                                           SBA<?, I> sba2,
+                                                           ATSequences<I> at2,
+                                                           SPAAlphabet<I> alphabet) {
+        return findSeparatingWord(sba1, at1, sba2, at2, alphabet, null, false);
+    }
 
-        for (final I procedure : alphabet.getCallAlphabet()) {
-            final DFA<?, I> p1 = sba1.getProcedures().get(procedure);
-            final DFA<?, I> p2 = sba2.getProcedures().get(procedure);
+    /**
+     * Variant of {@link #findSeparatingWord(SBA, ATSequences, SBA, ATSequences, SPAAlphabet)} that may check the
+     * individual procedures in parallel and may search for the shortest separating word.
+     * <p>
+     * If a shortest separating word is requested, the procedures are checked in ascending order of the lengths of
+     * their access sequences, which are a lower bound for the lengths of their separating words. Hence, the search
+     * stops as soon as no remaining procedure can yield a shorter separating word. Otherwise, the separating word of
+     * the first procedure (in the order of the call alphabet) is returned.
+     * <p>
+     * If a pool is given, the checks are submitted lazily in the above order, so that at most {@link
+     * ForkJoinPool#getParallelism()} checks are in progress at the same time. Checks that turn out to be unnecessary
+     * are skipped if they have not been started yet, whereas already running checks are completed in the background
+     * (and their results are discarded). In any case, the result does not depend on the given pool.
+     *
+     * @param sba1
+     *         the first {@link SBA}
+     * @param at1
+     *         the sequences of the first {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param sba2
+     *         the second {@link SBA}
+     * @param at2
+     *         the sequences of the second {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param alphabet
+     *         the alphabet of both {@link SBA}s
+     * @param pool
+     *         the pool for checking the procedures in parallel, or {@code null} for checking them sequentially
+     * @param shortest
+     *         whether to return the shortest separating word across all procedures
+     * @param <I>
+     *         input symbol type
+     *
+     * @return a separating word, or {@code null} if the {@link SBA}s are equivalent
+     */
+    public static <I> @Nullable Word<I> findSeparatingWord(SBA<?, I> sba1,
+                                                           ATSequences<I> at1,
+                                                           SBA<?, I> sba2,
+                                                           ATSequences<I> at2,
+                                                           SPAAlphabet<I> alphabet,
+                                                           @Nullable ForkJoinPool pool,
+                                                           boolean shortest) {
+
+        // the procedures that may be separated, together with a lower bound for the length of their separating word
+        final List<Pair<Integer, I>> candidates = new ArrayList<>(alphabet.getNumCalls());
 
-            if (p1 != null && p2 != null) {
-                final Word<I> as1 = at1.accessSequences.get(procedure);
-                final Word<I> ts1 = at1.terminatingSequences.get(procedure);
+        for (I procedure : alphabet.getCallAlphabet()) {
+            final int bound = getMinimalSeparatingLength(procedure, sba1, at1, sba2, at2);
+            if (bound < Integer.MAX_VALUE) {
+                candidates.add(Pair.of(bound, procedure));
+            }
+        }
 
-                final Word<I> as2 = at2.accessSequences.get(procedure);
-                final Word<I> ts2 = at2.terminatingSequences.get(procedure);
+        if (shortest) {
+            // stable, so ties are resolved by the order of the call alphabet
+            candidates.sort(Comparator.comparing(Pair::getFirst));
+        }
 
-                if (as1 != null && ts1 != null && as2 != null && ts2 != null) {
-                    // we can access both procedures and both procedures have accepting runs
+        // the number of checks that are in progress at the same time, 0 for sequential checks
+        final int window = pool != null && candidates.size() > 1 ? pool.getParallelism() : 0;
+        final List<ForkJoinTask<Word<I>>> tasks = new ArrayList<>(candidates.size());
 
-                    final Set<I> localAlphabet = new HashSet<>(at1.terminatingSequences.keySet());
-                    localAlphabet.retainAll(at2.terminatingSequences.keySet());
-                    localAlphabet.addAll(alphabet.getInternalAlphabet());
-                    localAlphabet.add(alphabet.getReturnSymbol());
+        Word<I> result = null;
 
-                    final Word<I> sepWord = Automata.findSeparatingWord(p1, p2, localAlphabet);
+        try {
+            for (int i = 0; i < candidates.size(); i++) {
+                final Pair<Integer, I> c = candidates.get(i);
 
-                    if (sepWord != null) {
-                        // deterministically select at1 because any mismatch will suffice for a counterexample
-                        final Word<I> as = at1.accessSequences.get(procedure);
+                if (result != null && result.length() <= c.getFirst()) {
+                    break;
+                }
 
-                        if (sepWord.isEmpty()) {
-                            return as;
-                        } else {
-                            // do not expand the last symbol, because it may be an open call
-                            final Word<I> expandedSepWord = alphabet.expand(sepWord.prefix(-1), at1.terminatingSequences::get);
-                            return Word.fromWords(as, expandedSepWord, Word.fromLetter(sepWord.lastSymbol()));
-                        }
+                // submit the next checks in order, unless they cannot yield a shorter separating word anymore
+                while (window > 0 && tasks.size() < Math.min(i + window, candidates.size())) {
+                    final Pair<Integer, I> next = candidates.get(tasks.size());
+                    if (result != null && result.length() <= next.getFirst()) {
+                        break;
                     }
-                } else if (as1 != null && ts1 != null) {
-                    return Word.fromWords(as1, ts1, Word.fromLetter(alphabet.getReturnSymbol()));
-                } else if (as2 != null && ts2 != null) {
-                    return Word.fromWords(as2, ts2, Word.fromLetter(alphabet.getReturnSymbol()));
-                } // else no procedures can be embedded
-            } else if (p1 != null) {
-                final Word<I> as = at1.accessSequences.get(procedure);
-
-                if (as != null) {
-                    return as;
+                    tasks.add(pool.submit(() -> findSeparatingWord(next.getSecond(), sba1, at1, sba2, at2, alphabet)));
                 }
-            } else if (p2 != null) {
-                final Word<I> as = at2.accessSequences.get(procedure);
 
-                if (as != null) {
-                    return as;
+                final Word<I> sepWord = window == 0 ?
+                        findSeparatingWord(c.getSecond(), sba1, at1, sba2, at2, alphabet) :
+                        tasks.get(i).join();
+
+                if (sepWord != null && (result == null || sepWord.length() < result.length())) {
+                    result = sepWord;
                 }
-            } // else both procedures are null and therefore skip this call symbol
+
+                if (result != null && !shortest) {
+                    break;
+                }
+            }
+        } finally {
+            // skip all submitted checks that are no longer needed (or all pending checks in case of an exception),
+            // cancelling does not interrupt checks that are already running
+            for (ForkJoinTask<Word<I>> task : tasks) {
+                task.cancel(false);
+            }
         }
 
+        return result;
+    }
+
+    /**
+     * Returns a lower bound for the length of a separating word of the given procedure (as constructed by {@link
+     * #findSeparatingWord(Object, SBA, ATSequences, SBA, ATSequences, SPAAlphabet)}), or {@link Integer#MAX_VALUE} if
+     * the procedure cannot be separated.
+     */
+    private static <I> int getMinimalSeparatingLength(I procedure,
+                                                      SBA<?, I> sba1,
+                                                      ATSequences<I> at1,
+                                                      SBA<?, I> sba2,
+                                                      ATSequences<I> at2) {
+        final DFA<?, I> p1 = sba1.getProcedures().get(procedure);
+        final DFA<?, I> p2 = sba2.getProcedures().get(procedure);
+
+        final Word<I> as1 = at1.accessSequences.get(procedure);
+        final Word<I> ts1 = at1.terminatingSequences.get(procedure);
+
+        final Word<I> as2 = at2.accessSequences.get(procedure);
+        final Word<I> ts2 = at2.terminatingSequences.get(procedure);
+
+        if (p1 != null && p2 != null) {
+            if (as1 != null && ts1 != null && as2 != null && ts2 != null) {
+                return as1.length();
+            } else if (as1 != null && ts1 != null) {
+                return as1.length() + ts1.length() + 1;
+            } else if (as2 != null && ts2 != null) {
+                return as2.length() + ts2.length() + 1;
+            }
+        } else if (p1 != null && as1 != null) {
+            return as1.length();
+        } else if (p2 != null && as2 != null) {
+            return as2.length();
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks a single procedure of the given {@link SBA}s for a separating word (see {@link #findSeparatingWord(SBA,
+     * ATSequences, SBA, ATSequences, SPAAlphabet)}).
+     *
+     * @param procedure
+     *         the procedure to check
+     * @param sba1
+     *         the first {@link SBA}
+     * @param at1
+     *         the sequences of the first {@link SBA}
+     * @param sba2
+     *         the second {@link SBA}
+     * @param at2
+     *         the sequences of the second {@link SBA}
+     * @param alphabet
+     *         the alphabet of both {@link SBA}s
+     * @param <I>
+     *         input symbol type
+     *
+     * @return a word that reveals a difference in the given procedure, or {@code null} if no such word exists
+     */
+    public static <I> @Nullable Word<I> findSeparatingWord(I procedure,
+                                                            SBA<?, I> sba1,
+                                                            ATSequences<I> at1,
+                                                            SBA<?, I> sba2,
+                                                            ATSequences<I> at2,
+                                                            SPAAlphabet<I> alphabet) {
+        final DFA<?, I> p1 = sba1.getProcedures().get(procedure);
+        final DFA<?, I> p2 = sba2.getProcedures().get(procedure);
+
+        if (p1 != null && p2 != null) {
+            final Word<I> as1 = at1.accessSequences.get(procedure);
+            final Word<I> ts1 = at1.terminatingSequences.get(procedure);
+
+            final Word<I> as2 = at2.accessSequences.get(procedure);
+            final Word<I> ts2 = at2.terminatingSequences.get(procedure);
+
+            if (as1 != null && ts1 != null && as2 != null && ts2 != null) {
+                // we can access both procedures and both procedures have accepting runs
+
+                final Set<I> localAlphabet = new HashSet<>(at1.terminatingSequences.keySet());
+                localAlphabet.retainAll(at2.terminatingSequences.keySet());
+                localAlphabet.addAll(alphabet.getInternalAlphabet());
+                localAlphabet.add(alphabet.getReturnSymbol());
+
+                final Word<I> sepWord = Automata.findSeparatingWord(p1, p2, localAlphabet);
+
+                if (sepWord != null) {
+                    // deterministically select at1 because any mismatch will suffice for a counterexample
+                    final Word<I> as = at1.accessSequences.get(procedure);
+
+                    if (sepWord.isEmpty()) {
+                        return as;
+                    } else {
+                        // do not expand the last symbol, because it may be an open call
+                        final Word<I> expandedSepWord =
+                                alphabet.expand(sepWord.prefix(-1), at1.terminatingSequences::get);
+                        return Word.fromWords(as, expandedSepWord, Word.fromLetter(sepWord.lastSymbol()));
+                    }
+                }
+            } else if (as1 != null && ts1 != null) {
+                return Word.fromWords(as1, ts1, Word.fromLetter(alphabet.getReturnSymbol()));
+            } else if (as2 != null && ts2 != null) {
+                return Word.fromWords(as2, ts2, Word.fromLetter(alphabet.getReturnSymbol()));
+            } // else no procedures can be embedded
+        } else if (p1 != null) {
+            final Word<I> as = at1.accessSequences.get(procedure);
+
+            if (as != null) {
+                return as;
+            }
+        } else if (p2 != null) {
+            final Word<I> as = at2.accessSequences.get(procedure);
+
+            if (as != null) {
+                return as;
+            }
+        } // else both procedures are null and therefore skip this call symbol
+
         return null;
     }
 
@@ -374,34 +571,143 @@ public class SBAUtil {
     }
 
     public static <I> List<Word<I>> characterizingSet(SBA<?, I> sul, SPAAlphabet<I> alphabet) {
+        return characterizingSet(sul, alphabet, computeATSequences(sul, alphabet));
+    }
 
-        final List<Word<I>> tests = new ArrayList<>();
-        final ATSequences<I> ats = SBAUtil.computeATSequences(sul, alphabet);
+    /**
+     * Variant of {@link #characterizingSet(SBA, SPAAlphabet)} that uses pre-computed {@link ATSequences}.
+     * <p>
+     * Note that the returned tests are collected from {@link #characterizingTests(SBA, SPAAlphabet, ATSequences)} and
+     * therefore share their (compressed) access and terminating sequences. Random access to their symbols is
+     * logarithmic rather than constant in the number of shared fragments, so callers that access the symbols of a
+     * test repeatedly should iterate over it or copy it (e.g. via {@link Word#fromWords(Word[])}) first.
+     *
+     * @param sul
+     *         the {@link SBA} to characterize
+     * @param alphabet
+     *         the alphabet of the {@link SBA}
+     * @param ats
+     *         the sequences of the {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the characterizing set
+     */
+    public static <I> List<Word<I>> characterizingSet(SBA<?, I> sul, SPAAlphabet<I> alphabet, ATSequences<I> ats) {
+        final CharacterizingTests<I> tests = characterizingTests(sul, alphabet, ats);
+        final List<Word<I>> result = new ArrayList<>(Math.toIntExact(tests.size()));
+        tests.forEach(result::add);
+        return result;
+    }
 
-        final Set<I> eligibleInputs = new HashSet<>(ats.terminatingSequences.keySet());
-        eligibleInputs.addAll(alphabet.getInternalAlphabet());
+    public static <I> CharacterizingTests<I> characterizingTests(SBA<?, I> sul, SPAAlphabet<I> alphabet) {
+        return characterizingTests(sul, alphabet, computeATSequences(sul, alphabet));
+    }
 
-        for (Entry<I, DFA<?, I>> e : sul.getProcedures().entrySet()) {
-            final Word<I> as = ats.accessSequences.get(e.getKey());
-            final DFA<?, I> dfa = e.getValue();
+    /**
+     * Lazy variant of {@link #characterizingSet(SBA, SPAAlphabet, ATSequences)} that expands the tests on demand.
+     *
+     * @param sul
+     *         the {@link SBA} to characterize
+     * @param alphabet
+     *         the alphabet of the {@link SBA}
+     * @param ats
+     *         the sequences of the {@link SBA}, see {@link #computeATSequences(SBA, SPAAlphabet)}
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the (lazy) characterizing set
+     */
+    public static <I> CharacterizingTests<I> characterizingTests(SBA<?, I> sul,
+                                                                 SPAAlphabet<I> alphabet,
+                                                                 ATSequences<I> ats) {
+        return new CharacterizingTests<>(sul, alphabet, ats);
+    }
 
-            final List<Word<I>> sCov = Automata.stateCover(dfa, eligibleInputs);
-            final List<Word<I>> cSet = Automata.characterizingSet(dfa, alphabet);
+    /**
+     * An interruptible breadth-first search for a terminating sequence of a single procedure.
+     */
+    private static final class TerminatingSequenceSearch<S, I> {
+
+        private final SPAAlphabet<I> alphabet;
+        private final DFA<S, I> dfa;
+
+        private final Map<S, Word<I>> reached;
+        private final Deque<S> queue;
+        // states whose call transitions can only be traversed once the call has a terminating sequence
+        private final Map<I, List<S>> blocked;
+
+        TerminatingSequenceSearch(SPAAlphabet<I> alphabet, DFA<S, I> dfa) {
+            this.alphabet = alphabet;
+            this.dfa = dfa;
+            this.reached = new HashMap<>();
+            this.queue = new ArrayDeque<>();
+            this.blocked = new HashMap<>();
+
+            final S init = dfa.getInitialState();
+            if (init != null && dfa.isAccepting(init)) {
+                this.reached.put(init, Word.epsilon());
+                this.queue.add(init);
+            }
+        }
+
+        /**
+         * Continues the search until a terminating sequence is found or no more states can be explored.
+         *
+         * @return the (local) terminating sequence, or {@code null} if none could be found (yet)
+         */
+        @Nullable Word<I> advance(Set<I> terminatingProcedures) {
+            while (!queue.isEmpty()) {
+                final S state = queue.poll();
+                final Word<I> trace = reached.get(state);
+                final S returnSucc = dfa.getSuccessor(state, alphabet.getReturnSymbol());
+
+                if (returnSucc != null && dfa.isAccepting(returnSucc)) {
+                    return trace;
+                }
+
+                for (I i : alphabet.getInternalAlphabet()) {
+                    explore(state, trace, i);
+                }
 
-            for (Word<I> c : sCov) {
-                for (I i : alphabet) {
-                    if (!alphabet.isCallSymbol(i) || ats.terminatingSequences.containsKey(i)) {
-                        final Word<I> ts = c.append(i);
-                        for (Word<I> cs : cSet) {
-                            tests.add(as.concat(alphabet.expand(ts.concat(cs), ats.terminatingSequences::get)));
-                        }
+                for (I i : alphabet.getCallAlphabet()) {
+                    if (terminatingProcedures.contains(i)) {
+                        explore(state, trace, i);
                     } else {
-                        tests.add(as.concat(alphabet.expand(c, ats.terminatingSequences::get)).append(i));
+                        blocked.computeIfAbsent(i, k -> new ArrayList<>()).add(state);
                     }
                 }
             }
+
+            return null;
         }
 
-        return tests;
+        /**
+         * Traverses the previously blocked transitions of the given call.
+         *
+         * @return {@code true} if the search can be continued, {@code false} otherwise
+         */
+        boolean unblock(I procedure) {
+            final List<S> states = blocked.remove(procedure);
+
+            if (states == null) {
+                return false;
+            }
+
+            for (S s : states) {
+                explore(s, reached.get(s), procedure);
+            }
+
+            return !queue.isEmpty();
+        }
+
+        private void explore(S state, Word<I> trace, I input) {
+            final S succ = dfa.getSuccessor(state, input);
+
+            if (succ != null && dfa.isAccepting(succ) && !reached.containsKey(succ)) {
+                reached.put(succ, trace.append(input));
+                queue.add(succ);
+            }
+        }
     }
 }
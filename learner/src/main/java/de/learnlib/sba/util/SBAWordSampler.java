@@ -0,0 +1,437 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import de.learnlib.sba.api.SBA;
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A sampler that draws uniformly distributed words of a given length from the (prefix-closed) language of an {@link
+ * SBA}. In contrast to random walks, which are biased towards short words and shallow nesting, every accepted word of
+ * the requested length is equally likely.
+ * <p>
+ * Upon construction, the sampler counts (with arbitrary precision) for each procedure, each state, and each length up
+ * to the given maximum
+ * <ul>
+ * <li>the number of local continuations that terminate the procedure, i.e. end with its return symbol, and</li>
+ * <li>the number of local continuations that do not return from the procedure (but may end in a pending call).</li>
+ * </ul>
+ * A nested call contributes its call symbol, one of the terminating continuations of the called procedure (of any
+ * length), and the continuation of the calling procedure. For each state, call and length, the counts of these
+ * combinations are additionally stored cumulatively over the length of the nested continuation. Sampling then
+ * decomposes a uniformly drawn rank along these counts, symbol by symbol. Hence, counting takes {@code O(n^2)} time and
+ * space, and sampling takes {@code O(n log n)} steps (each step scanning the alphabet and, for nested calls, binary
+ * searching the length of the nested terminating continuation).
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class SBAWordSampler<I> {
+
+    private final SPAAlphabet<I> alphabet;
+    private final @Nullable I initialProcedure;
+    private final Map<I, Procedure<?>> procedures;
+    private final int maxLength;
+
+    public SBAWordSampler(SBA<?, I> sba, int maxLength) {
+        this(sba, sba.getInputAlphabet(), maxLength);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sba
+     *         the {@link SBA} whose language should be sampled
+     * @param alphabet
+     *         the alphabet of the {@link SBA}
+     * @param maxLength
+     *         the maximum length of the sampled words
+     */
+    public SBAWordSampler(SBA<?, I> sba, SPAAlphabet<I> alphabet, int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("The maximum length must not be negative");
+        }
+
+        this.alphabet = alphabet;
+        this.initialProcedure = sba.getInitialProcedure();
+        this.procedures = new HashMap<>();
+        this.maxLength = maxLength;
+
+        for (Entry<I, DFA<?, I>> e : sba.getProcedures().entrySet()) {
+            this.procedures.put(e.getKey(), createProcedure(e.getValue()));
+        }
+
+        // the counts of a length only depend on the counts of shorter lengths (of all procedures)
+        for (int m = 0; m < maxLength; m++) {
+            for (Procedure<?> p : this.procedures.values()) {
+                p.count(m);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of accepted words of the given length.
+     *
+     * @param length
+     *         the length of the words
+     *
+     * @return the number of accepted words
+     */
+    public BigInteger count(int length) {
+        checkLength(length);
+
+        if (length == 0) {
+            return BigInteger.ONE;
+        }
+
+        final Procedure<?> main = getInitialProcedure();
+
+        if (main == null) {
+            return BigInteger.ZERO;
+        }
+
+        return main.getPending(main.init, length - 1).add(main.getTerminating(main.init, length - 1));
+    }
+
+    /**
+     * Draws a uniformly distributed accepted word of the given length.
+     *
+     * @param length
+     *         the length of the word
+     * @param random
+     *         the source of randomness
+     *
+     * @return the sampled word, or {@code null} if no accepted word of the given length exists
+     */
+    public @Nullable Word<I> sample(int length, Random random) {
+        final BigInteger total = count(length);
+
+        if (total.signum() == 0) {
+            return null;
+        } else if (length == 0) {
+            return Word.epsilon();
+        }
+
+        final Procedure<?> main = getInitialProcedure();
+        assert main != null;
+
+        final BigInteger rank = uniform(total, random);
+        final BigInteger pending = main.getPending(main.init, length - 1);
+        final WordBuilder<I> wb = new WordBuilder<>(length);
+        final Deque<Task> tasks = new ArrayDeque<>();
+
+        wb.append(initialProcedure);
+
+        if (rank.compareTo(pending) < 0) {
+            tasks.push(new Task(main, main.init, length - 1, false, rank));
+        } else {
+            tasks.push(new Task(main, main.init, length - 1, true, rank.subtract(pending)));
+        }
+
+        while (!tasks.isEmpty()) {
+            final Task t = tasks.pop();
+            t.procedure.sample(t, wb, tasks);
+        }
+
+        assert wb.size() == length;
+        return wb.toWord();
+    }
+
+    private @Nullable Procedure<?> getInitialProcedure() {
+        if (initialProcedure == null) {
+            return null;
+        }
+
+        final Procedure<?> main = this.procedures.get(initialProcedure);
+        return main == null || main.init < 0 ? null : main;
+    }
+
+    private void checkLength(int length) {
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("The length needs to be in [0, " + maxLength + ']');
+        }
+    }
+
+    private <S> Procedure<S> createProcedure(DFA<S, I> dfa) {
+        return new Procedure<>(dfa);
+    }
+
+    /**
+     * Returns a uniformly distributed number in {@code [0, bound)}.
+     */
+    private static BigInteger uniform(BigInteger bound, Random random) {
+        BigInteger result;
+        do {
+            result = new BigInteger(bound.bitLength(), random);
+        } while (result.compareTo(bound) >= 0);
+        return result;
+    }
+
+    /**
+     * Returns the first index of the given (non-decreasing) counts whose value exceeds the given rank. The rank has to
+     * be smaller than the last count.
+     */
+    private static int upperBound(BigInteger[] cumulative, BigInteger rank) {
+        int lo = 0;
+        int hi = cumulative.length - 1;
+
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (cumulative[mid].compareTo(rank) > 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        return lo;
+    }
+
+    private final class Procedure<S> {
+
+        private final DFA<S, I> dfa;
+        private final StateIDs<S> ids;
+        // the id of the initial state, or -1 if the procedure does not accept its empty prefix
+        private final int init;
+
+        // the number of continuations per state and length that end with the return symbol of this procedure
+        private final BigInteger[][] terminating;
+        // the number of continuations per state and length that do not return from this procedure
+        private final BigInteger[][] pending;
+        // the cumulative number of continuations per state, call index, and length that start with a terminating nested
+        // call of at most the given length (index k - 1 for nested length k), once for each of the above kinds
+        private final BigInteger[][][][] nestedTerminating;
+        private final BigInteger[][][][] nestedPending;
+
+        Procedure(DFA<S, I> dfa) {
+            final S initial = dfa.getInitialState();
+
+            this.dfa = dfa;
+            this.ids = dfa.stateIDs();
+            this.init = initial != null && dfa.isAccepting(initial) ? ids.getStateId(initial) : -1;
+            this.terminating = new BigInteger[dfa.size()][maxLength];
+            this.pending = new BigInteger[dfa.size()][maxLength];
+            this.nestedTerminating = new BigInteger[dfa.size()][alphabet.getNumCalls()][maxLength][];
+            this.nestedPending = new BigInteger[dfa.size()][alphabet.getNumCalls()][maxLength][];
+
+            for (int i = 0; i < dfa.size(); i++) {
+                Arrays.fill(this.terminating[i], BigInteger.ZERO);
+                Arrays.fill(this.pending[i], BigInteger.ZERO);
+            }
+        }
+
+        BigInteger getTerminating(int stateId, int length) {
+            return stateId < 0 ? BigInteger.ZERO : terminating[stateId][length];
+        }
+
+        BigInteger getPending(int stateId, int length) {
+            return stateId < 0 ? BigInteger.ZERO : pending[stateId][length];
+        }
+
+        /**
+         * Returns the id of the (accepting) successor of the given state, or -1 if the symbol is rejected.
+         */
+        int getSuccessor(int stateId, I input) {
+            final S succ = dfa.getSuccessor(ids.getState(stateId), input);
+            return succ != null && dfa.isAccepting(succ) ? ids.getStateId(succ) : -1;
+        }
+
+        /**
+         * Returns the called procedure, if the given call symbol can be embedded.
+         */
+        @Nullable Procedure<?> getCallee(I call) {
+            final Procedure<?> callee = procedures.get(call);
+            return callee == null || callee.init < 0 ? null : callee;
+        }
+
+        void count(int m) {
+            for (S s : dfa.getStates()) {
+                if (!dfa.isAccepting(s)) {
+                    continue;
+                }
+
+                final int sid = ids.getStateId(s);
+
+                BigInteger term = m == 1 && getSuccessor(sid, alphabet.getReturnSymbol()) >= 0 ?
+                        BigInteger.ONE :
+                        BigInteger.ZERO;
+                BigInteger pend = m == 0 ? BigInteger.ONE : BigInteger.ZERO;
+
+                if (m > 0) {
+                    for (I i : alphabet.getInternalAlphabet()) {
+                        final int succ = getSuccessor(sid, i);
+                        if (succ >= 0) {
+                            term = term.add(terminating[succ][m - 1]);
+                            pend = pend.add(pending[succ][m - 1]);
+                        }
+                    }
+
+                    for (I c : alphabet.getCallAlphabet()) {
+                        final int succ = getSuccessor(sid, c);
+                        final Procedure<?> callee = getCallee(c);
+
+                        if (succ < 0 || callee == null) {
+                            continue;
+                        }
+
+                        // the nested call terminates (with k symbols) and this procedure continues
+                        final int callIdx = alphabet.getCallSymbolIndex(c);
+                        final BigInteger[] cumTerm = new BigInteger[Math.max(m - 2, 0)];
+                        final BigInteger[] cumPend = new BigInteger[m - 1];
+                        BigInteger sumTerm = BigInteger.ZERO;
+                        BigInteger sumPend = BigInteger.ZERO;
+
+                        for (int k = 1; k < m; k++) {
+                            final BigInteger nested = callee.getTerminating(callee.init, k);
+                            if (nested.signum() > 0) {
+                                sumPend = sumPend.add(nested.multiply(pending[succ][m - 1 - k]));
+                                if (k < m - 1) {
+                                    sumTerm = sumTerm.add(nested.multiply(terminating[succ][m - 1 - k]));
+                                }
+                            }
+                            cumPend[k - 1] = sumPend;
+                            if (k < m - 1) {
+                                cumTerm[k - 1] = sumTerm;
+                            }
+                        }
+
+                        nestedTerminating[sid][callIdx][m] = cumTerm;
+                        nestedPending[sid][callIdx][m] = cumPend;
+                        term = term.add(sumTerm);
+                        pend = pend.add(sumPend);
+
+                        // the nested call is still pending at the end of the word
+                        pend = pend.add(callee.getPending(callee.init, m - 1));
+                    }
+                }
+
+                terminating[sid][m] = term;
+                pending[sid][m] = pend;
+            }
+        }
+
+        /**
+         * Emits the next symbol(s) of the given task and pushes the remaining tasks. The order of choices mirrors
+         * {@link #count(int)}.
+         */
+        @SuppressWarnings("PMD.AvoidReassigningParameters")
+        void sample(Task task, WordBuilder<I> wb, Deque<Task> tasks) {
+            final int sid = task.stateId;
+            final int m = task.length;
+            final boolean term = task.terminating;
+            BigInteger rank = task.rank;
+
+            if (m == 0) {
+                return;
+            }
+
+            if (term && m == 1 && getSuccessor(sid, alphabet.getReturnSymbol()) >= 0) {
+                if (rank.signum() == 0) {
+                    wb.append(alphabet.getReturnSymbol());
+                    return;
+                }
+                rank = rank.subtract(BigInteger.ONE);
+            }
+
+            final BigInteger[][] counts = term ? terminating : pending;
+
+            for (I i : alphabet.getInternalAlphabet()) {
+                final int succ = getSuccessor(sid, i);
+                if (succ >= 0) {
+                    final BigInteger cnt = counts[succ][m - 1];
+                    if (rank.compareTo(cnt) < 0) {
+                        wb.append(i);
+                        tasks.push(new Task(this, succ, m - 1, term, rank));
+                        return;
+                    }
+                    rank = rank.subtract(cnt);
+                }
+            }
+
+            for (I c : alphabet.getCallAlphabet()) {
+                final int succ = getSuccessor(sid, c);
+                final Procedure<?> callee = getCallee(c);
+
+                if (succ < 0 || callee == null) {
+                    continue;
+                }
+
+                final BigInteger[] cumulative =
+                        (term ? nestedTerminating : nestedPending)[sid][alphabet.getCallSymbolIndex(c)][m];
+
+                if (cumulative.length > 0) {
+                    final BigInteger total = cumulative[cumulative.length - 1];
+
+                    if (rank.compareTo(total) < 0) {
+                        final int idx = upperBound(cumulative, rank);
+                        final int k = idx + 1;
+                        final BigInteger rest = counts[succ][m - 1 - k];
+                        final BigInteger offset = idx > 0 ? rank.subtract(cumulative[idx - 1]) : rank;
+                        final BigInteger[] split = offset.divideAndRemainder(rest);
+                        wb.append(c);
+                        // the nested call is emitted before the continuation of this procedure
+                        tasks.push(new Task(this, succ, m - 1 - k, term, split[1]));
+                        tasks.push(new Task(callee, callee.init, k, true, split[0]));
+                        return;
+                    }
+                    rank = rank.subtract(total);
+                }
+
+                if (!term) {
+                    final BigInteger cnt = callee.getPending(callee.init, m - 1);
+                    if (rank.compareTo(cnt) < 0) {
+                        wb.append(c);
+                        tasks.push(new Task(callee, callee.init, m - 1, false, rank));
+                        return;
+                    }
+                    rank = rank.subtract(cnt);
+                }
+            }
+
+            throw new IllegalStateException("The rank exceeds the number of continuations");
+        }
+    }
+
+    private final class Task {
+
+        private final Procedure<?> procedure;
+        private final int stateId;
+        private final int length;
+        private final boolean terminating;
+        private final BigInteger rank;
+
+        Task(Procedure<?> procedure, int stateId, int length, boolean terminating, BigInteger rank) {
+            this.procedure = procedure;
+            this.stateId = stateId;
+            this.length = length;
+            this.terminating = terminating;
+            this.rank = rank;
+        }
+    }
+}
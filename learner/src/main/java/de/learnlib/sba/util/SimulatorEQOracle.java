@@ -15,19 +15,44 @@
 package de.learnlib.sba.util;
 
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
 
 import de.learnlib.sba.api.SBA;
 import de.learnlib.api.oracle.EquivalenceOracle;
 import de.learnlib.api.query.DefaultQuery;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class SimulatorEQOracle<I> implements EquivalenceOracle<SBA<?, I>, I, Boolean> {
 
     private final SBA<?, I> sba;
+    private final @Nullable ForkJoinPool pool;
+    private final boolean shortest;
+
+    // the sequences of the (fixed) reference system only need to be computed once per alphabet
+    private SPAAlphabet<I> alphabet;
+    private ATSequences<I> sequences;
 
     public SimulatorEQOracle(SBA<?, I> sba) {
+        this(sba, null, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sba
+     *         the reference system
+     * @param pool
+     *         the pool for checking the procedures in parallel, or {@code null} for checking them sequentially
+     * @param shortest
+     *         whether to return the shortest counterexample across all procedures (see {@link
+     *         SBAUtil#findSeparatingWord(SBA, ATSequences, SBA, ATSequences, SPAAlphabet, ForkJoinPool, boolean)})
+     */
+    public SimulatorEQOracle(SBA<?, I> sba, @Nullable ForkJoinPool pool, boolean shortest) {
         this.sba = sba;
+        this.pool = pool;
+        this.shortest = shortest;
     }
 
     @Override
@@ -40,7 +65,18 @@ public class SimulatorEQOracle<I> implements EquivalenceOracle<SBA<?, I>, I, Boo
         @SuppressWarnings("unchecked")
         final SPAAlphabet<I> alphabet = (SPAAlphabet<I>) inputs;
 
-        final Word<I> sep = SBAUtil.findSeparatingWord(sba, hypothesis, alphabet);
+        if (this.alphabet != alphabet) {
+            this.sequences = SBAUtil.computeATSequences(sba, alphabet);
+            this.alphabet = alphabet;
+        }
+
+        final Word<I> sep = SBAUtil.findSeparatingWord(sba,
+                                                       this.sequences,
+                                                       hypothesis,
+                                                       SBAUtil.computeATSequences(hypothesis, alphabet),
+                                                       alphabet,
+                                                       pool,
+                                                       shortest);
 
         if (sep == null) {
             return null;
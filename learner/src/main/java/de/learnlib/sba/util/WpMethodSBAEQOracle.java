@@ -0,0 +1,248 @@
+/* Copyright (C) 2022 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.sba.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import de.learnlib.sba.api.ATProvider;
+import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.impl.CompressedWord;
+import com.google.common.collect.Iterators;
+import de.learnlib.api.oracle.MembershipOracle;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An {@link AbstractParallelSBAEQOracle} that generates a conformance test suite for each procedure of the hypothesis
+ * according to the Wp-method. For each procedure, the (local) tests consist of
+ * <ul>
+ * <li>the state cover, followed by all middle parts up to the given lookahead, followed by the characterizing set,</li>
+ * <li>the remaining transitions (including the returns), followed by all middle parts, followed by the identifiers of
+ * the reached state only, and</li>
+ * <li>the state cover, followed by each call symbol without a terminating sequence (in order to detect new
+ * procedures).</li>
+ * </ul>
+ * The local tests are embedded into global tests via the access sequence of the procedure and the expansion of nested
+ * calls via terminating sequences (both taken from the {@link ATProvider} of the learner). Only the local tests of a
+ * single procedure are kept in memory at a time, the global tests are expanded on demand.
+ * <p>
+ * If the hypothesis contains no procedures yet, each call symbol is tested, in order to find an initial positive
+ * counterexample.
+ *
+ * @param <I>
+ *         input symbol type
+ */
+public class WpMethodSBAEQOracle<I> extends AbstractParallelSBAEQOracle<I> {
+
+    private final ATProvider<I> atProvider;
+    private final int lookahead;
+
+    /**
+     * Constructor.
+     *
+     * @param sul
+     *         the membership oracle of the system under learning
+     * @param atProvider
+     *         the provider of access and terminating sequences
+     * @param lookahead
+     *         the maximum length of the middle parts, i.e. the number of additional states (per procedure) the system
+     *         under learning may have compared to the hypothesis
+     * @param pool
+     *         the pool for checking the tests concurrently, or {@code null} for checking them sequentially
+     * @param batchSize
+     *         the number of tests per batch
+     */
+    public WpMethodSBAEQOracle(MembershipOracle<I, Boolean> sul,
+                               ATProvider<I> atProvider,
+                               int lookahead,
+                               @Nullable ForkJoinPool pool,
+                               int batchSize) {
+        super(sul, pool, batchSize);
+
+        if (lookahead < 0) {
+            throw new IllegalArgumentException("The lookahead must not be negative");
+        }
+
+        this.atProvider = atProvider;
+        this.lookahead = lookahead;
+    }
+
+    @Override
+    protected Iterator<Word<I>> generateTestWords(SBA<?, I> hypothesis, SPAAlphabet<I> alphabet) {
+        final List<I> procedures = new ArrayList<>(alphabet.getNumCalls());
+
+        for (I procedure : alphabet.getCallAlphabet()) {
+            if (hypothesis.getProcedures().containsKey(procedure)) {
+                procedures.add(procedure);
+            }
+        }
+
+        if (procedures.isEmpty()) {
+            return Iterators.transform(alphabet.getCallAlphabet().iterator(), Word::fromLetter);
+        }
+
+        // the symbols that can be tested locally, i.e. without entering a nested procedure
+        final List<I> localInputs = new ArrayList<>(alphabet.getInternalAlphabet());
+        final List<I> openCalls = new ArrayList<>();
+
+        for (I call : alphabet.getCallAlphabet()) {
+            if (atProvider.hasTerminatingSequence(call)) {
+                localInputs.add(call);
+            } else {
+                openCalls.add(call);
+            }
+        }
+
+        final List<Word<I>> middleParts = generateMiddleParts(localInputs);
+
+        return Iterators.concat(Iterators.transform(procedures.iterator(), procedure -> {
+            final Word<I> prefix = CompressedWord.of(atProvider.getAccessSequence(procedure),
+                                                     Word.fromLetter(procedure));
+            final Set<Word<I>> localTests = generateLocalTests(hypothesis.getProcedures().get(procedure),
+                                                               alphabet,
+                                                               localInputs,
+                                                               openCalls,
+                                                               middleParts);
+            return Iterators.transform(localTests.iterator(), test -> expand(alphabet, prefix, test));
+        }));
+    }
+
+    private List<Word<I>> generateMiddleParts(List<I> inputs) {
+        final List<Word<I>> result = new ArrayList<>();
+        result.add(Word.epsilon());
+
+        int start = 0;
+        for (int depth = 0; depth < lookahead; depth++) {
+            final int end = result.size();
+            for (int i = start; i < end; i++) {
+                for (I sym : inputs) {
+                    result.add(result.get(i).append(sym));
+                }
+            }
+            start = end;
+        }
+
+        return result;
+    }
+
+    private static <S, I> Set<Word<I>> generateLocalTests(DFA<S, I> procedure,
+                                                         SPAAlphabet<I> alphabet,
+                                                         List<I> localInputs,
+                                                         List<I> openCalls,
+                                                         List<Word<I>> middleParts) {
+        final List<I> suffixInputs = new ArrayList<>(localInputs);
+        suffixInputs.add(alphabet.getReturnSymbol());
+
+        final List<Word<I>> stateCover = Automata.stateCover(procedure, localInputs);
+        final List<Word<I>> characterizingSet =
+                identifiersOrEpsilon(Automata.characterizingSet(procedure, suffixInputs));
+        final Map<S, List<Word<I>>> stateIdentifiers = new HashMap<>();
+
+        // keep the order of generation, but drop tests that coincide after truncation
+        final Set<Word<I>> tests = new LinkedHashSet<>();
+
+        for (Word<I> sc : stateCover) {
+            for (Word<I> mid : middleParts) {
+                for (Word<I> suffix : characterizingSet) {
+                    tests.add(truncate(alphabet, sc.concat(mid, suffix)));
+                }
+            }
+        }
+
+        for (Word<I> sc : stateCover) {
+            for (I call : openCalls) {
+                tests.add(sc.append(call));
+            }
+        }
+
+        final Set<Word<I>> covered = new HashSet<>(stateCover);
+
+        for (Word<I> sc : stateCover) {
+            for (I sym : suffixInputs) {
+                final Word<I> transition = sc.append(sym);
+                if (covered.contains(transition)) {
+                    continue;
+                }
+
+                // nothing follows a return locally
+                if (alphabet.isReturnSymbol(sym)) {
+                    tests.add(transition);
+                    continue;
+                }
+
+                for (Word<I> mid : middleParts) {
+                    final Word<I> word = transition.concat(mid);
+                    final S state = procedure.getState(word);
+                    final List<Word<I>> identifiers = state == null ?
+                            Collections.singletonList(Word.epsilon()) :
+                            stateIdentifiers.computeIfAbsent(state, s -> identifiersOrEpsilon(
+                                    Automata.stateCharacterizingSet(procedure, suffixInputs, s)));
+
+                    for (Word<I> suffix : identifiers) {
+                        tests.add(truncate(alphabet, word.concat(suffix)));
+                    }
+                }
+            }
+        }
+
+        return tests;
+    }
+
+    /**
+     * Returns the given identifiers, or the empty word if no identifiers are needed (e.g. for single-state procedures),
+     * so that the prefixes are tested nonetheless.
+     */
+    private static <I> List<Word<I>> identifiersOrEpsilon(List<Word<I>> identifiers) {
+        return identifiers.isEmpty() ? Collections.singletonList(Word.epsilon()) : identifiers;
+    }
+
+    /**
+     * Truncates the given local word after its first return symbol, because any further symbols would be executed in
+     * the context of the caller.
+     */
+    private static <I> Word<I> truncate(SPAAlphabet<I> alphabet, Word<I> word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (alphabet.isReturnSymbol(word.getSymbol(i))) {
+                return word.prefix(i + 1);
+            }
+        }
+        return word;
+    }
+
+    private Word<I> expand(SPAAlphabet<I> alphabet, Word<I> prefix, Word<I> localTest) {
+        if (localTest.isEmpty()) {
+            return prefix;
+        }
+
+        // do not expand the last symbol, because it may be an open call
+        return CompressedWord.of(prefix,
+                                 CompressedWord.expand(alphabet,
+                                                       localTest.prefix(-1),
+                                                       atProvider::getTerminatingSequence),
+                                 localTest.suffix(1));
+    }
+}
@@ -14,11 +14,22 @@
  */
 package de.learnlib.sba;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import de.learnlib.sba.api.NestedWordIndex;
 import de.learnlib.sba.api.SBA;
+import de.learnlib.sba.api.SBARunner;
+import de.learnlib.sba.impl.CompiledStackSBA;
+import de.learnlib.sba.impl.CompressedWord;
+import de.learnlib.sba.impl.PrefixClosedCache;
 import de.learnlib.sba.impl.StackSBA;
+import de.learnlib.sba.util.SBASimulatorOracle;
+import de.learnlib.api.query.DefaultQuery;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.automata.fsa.MutableDFA;
 import net.automatalib.automata.fsa.impl.compact.CompactDFA;
@@ -27,6 +38,7 @@ import net.automatalib.util.automata.fsa.MutableDFAs;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.SPAAlphabet;
 import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
 import net.automatalib.words.impl.Alphabets;
 import net.automatalib.words.impl.DefaultSPAAlphabet;
 import org.testng.Assert;
@@ -74,6 +86,155 @@ public class LanguageTest {
         testAcceptance(this.partialSBA);
     }
 
+    @Test
+    public void testCompiledCompleteAcceptance() {
+        testAcceptance(new CompiledStackSBA<>(this.completeSBA));
+    }
+
+    @Test
+    public void testCompiledPartialAcceptance() {
+        testAcceptance(new CompiledStackSBA<>(this.partialSBA));
+    }
+
+    @Test
+    public void testRunner() {
+        final Word<Character> word = Word.fromCharSequence("SaSTcRRaR");
+        final int[] depths = {1, 1, 2, 3, 3, 2, 1, 1, 0};
+
+        for (SBA<?, Character> sba : Arrays.asList(this.partialSBA,
+                                                   this.completeSBA,
+                                                   new CompiledStackSBA<>(this.partialSBA))) {
+            final SBARunner<Character> runner = sba.createRunner();
+
+            for (int i = 0; i < word.size(); i++) {
+                Assert.assertTrue(runner.step(word.getSymbol(i)), word.prefix(i + 1).toString());
+                Assert.assertEquals(runner.depth(), depths[i]);
+            }
+
+            Assert.assertFalse(runner.step('a'));
+
+            runner.reset();
+            Assert.assertTrue(runner.isAccepting());
+            Assert.assertEquals(runner.depth(), 0);
+            Assert.assertFalse(runner.step('T'));
+        }
+    }
+
+    @Test
+    public void testBatchSimulation() {
+        final List<Word<Character>> words = new ArrayList<>();
+        Word.fromCharSequence("SaSTcRRaR").prefixes(false).forEach(words::add);
+        Word.fromCharSequence("SaSTcRRaRa").prefixes(false).forEach(words::add);
+        words.addAll(Arrays.asList(Word.fromCharSequence("T"),
+                                   Word.fromCharSequence("Sc"),
+                                   Word.fromCharSequence("SaRS"),
+                                   Word.fromCharSequence("SaSRR"),
+                                   Word.fromCharSequence("SbSbRR")));
+
+        for (SBA<?, Character> sba : Arrays.asList(this.partialSBA, this.completeSBA)) {
+            final List<DefaultQuery<Character, Boolean>> queries = new ArrayList<>(words.size());
+            for (Word<Character> w : words) {
+                // split some of the words to check that prefixes and suffixes are joined correctly
+                queries.add(new DefaultQuery<>(w.prefix(w.length() / 2), w.suffix(w.length() - w.length() / 2)));
+            }
+
+            new SBASimulatorOracle<>(sba).processQueries(queries);
+
+            for (DefaultQuery<Character, Boolean> q : queries) {
+                Assert.assertEquals(q.getOutput(), (Boolean) sba.accepts(q.getInput()), q.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixClosedCache() {
+        final PrefixClosedCache<Character> cache = new PrefixClosedCache<>();
+
+        Assert.assertNull(cache.lookup(Word.epsilon()));
+
+        cache.insert(Word.fromCharSequence("SaSTc"), true);
+        cache.insert(Word.fromCharSequence("SaR"), false);
+
+        for (Word<Character> p : Word.fromCharSequence("SaSTc").prefixes(false)) {
+            Assert.assertEquals(cache.lookup(p), Boolean.TRUE, p.toString());
+        }
+
+        Assert.assertEquals(cache.lookup(Word.fromCharSequence("SaR")), Boolean.FALSE);
+        Assert.assertEquals(cache.lookup(Word.fromCharSequence("SaRaR")), Boolean.FALSE);
+        Assert.assertNull(cache.lookup(Word.fromCharSequence("SaSTcR")));
+        Assert.assertNull(cache.lookup(Word.fromCharSequence("Sb")));
+
+        // answers implied by previous insertions should not change anything
+        cache.insert(Word.fromCharSequence("SaRa"), false);
+        cache.insert(Word.fromCharSequence("SaS"), true);
+        Assert.assertEquals(cache.lookup(Word.fromCharSequence("SaRa")), Boolean.FALSE);
+        Assert.assertEquals(cache.lookup(Word.fromCharSequence("SaSTc")), Boolean.TRUE);
+        Assert.assertEquals(cache.size(), 6);
+
+        cache.clear();
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertNull(cache.lookup(Word.fromCharSequence("S")));
+        Assert.assertNull(cache.lookup(Word.fromCharSequence("SaR")));
+    }
+
+    @Test
+    public void testCompressedWord() {
+        final SPAAlphabet<Character> alphabet = completeSBA.getInputAlphabet();
+        final Map<Character, Word<Character>> ts = new HashMap<>();
+        ts.put('S', Word.fromCharSequence("a"));
+        ts.put('T', CompressedWord.expand(alphabet, Word.fromCharSequence("cSc"), ts::get));
+
+        final Word<Character> word = CompressedWord.expand(alphabet, Word.fromCharSequence("aTSb"), ts::get);
+        final Word<Character> expected = Word.fromCharSequence("aTcSaRcRSaRb");
+
+        Assert.assertEquals(word, expected);
+        Assert.assertEquals(word.hashCode(), expected.hashCode());
+        Assert.assertEquals(word.length(), expected.length());
+
+        for (int i = 0; i < expected.length(); i++) {
+            Assert.assertEquals(word.getSymbol(i), expected.getSymbol(i));
+            for (int j = i; j <= expected.length(); j++) {
+                Assert.assertEquals(word.subWord(i, j), expected.subWord(i, j));
+            }
+        }
+
+        Assert.assertEquals(word.append('R'), expected.append('R'));
+        Assert.assertEquals(Word.fromWords(word, word), Word.fromWords(expected, expected));
+        Assert.assertEquals(CompressedWord.of(Word.epsilon(), expected), expected);
+    }
+
+    @Test
+    public void testNestedWordIndex() {
+        final SPAAlphabet<Character> alphabet = completeSBA.getInputAlphabet();
+        final Random random = new Random(42);
+
+        for (int n = 0; n < 100; n++) {
+            final WordBuilder<Character> wb = new WordBuilder<>();
+            for (int i = 0; i < 30; i++) {
+                wb.append(alphabet.getSymbol(random.nextInt(alphabet.size())));
+            }
+
+            final Word<Character> word = wb.toWord();
+            final NestedWordIndex<Character> index = new NestedWordIndex<>(alphabet, word);
+
+            for (int i = 0; i <= word.length(); i++) {
+                Assert.assertEquals(index.getEnclosingCall(i), alphabet.findCallIndex(word, i));
+
+                if (i < word.length() && alphabet.isCallSymbol(word.getSymbol(i))) {
+                    final int returnIdx = index.getMatchingReturn(i);
+                    Assert.assertEquals(returnIdx, alphabet.findReturnIndex(word, i + 1));
+                    if (returnIdx > -1) {
+                        Assert.assertEquals(index.getMatchingCall(returnIdx), i);
+                    }
+                }
+
+                for (int j = i; j <= word.length(); j++) {
+                    Assert.assertEquals(index.getLocalWord(i, j), alphabet.normalize(word.subWord(i, j), 0));
+                }
+            }
+        }
+    }
+
     public void testAcceptance(SBA<?, Character> sba) {
         for (Word<Character> p : Word.fromCharSequence("SaSTcRRaR").prefixes(false)) {
             Assert.assertTrue(sba.accepts(p), p.toString());
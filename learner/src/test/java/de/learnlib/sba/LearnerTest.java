@@ -14,20 +14,32 @@
  */
 package de.learnlib.sba;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import de.learnlib.api.oracle.EquivalenceOracle;
 import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.oracle.SingleQueryOracle;
 import de.learnlib.api.query.DefaultQuery;
 import de.learnlib.oracle.equivalence.SampleSetEQOracle;
-import de.learnlib.oracle.membership.SimulatorOracle;
 import de.learnlib.sba.api.ATProvider;
 import de.learnlib.sba.api.LearnerProvider;
+import de.learnlib.sba.api.MismatchAnalyzer;
 import de.learnlib.sba.api.ProceduralLearner;
 import de.learnlib.sba.api.SBA;
 import de.learnlib.sba.config.DTDFAAdapter;
@@ -35,15 +47,36 @@ import de.learnlib.sba.config.LStarDFAAdapter;
 import de.learnlib.sba.config.OptimalTTTDFAAdapter;
 import de.learnlib.sba.config.TTTDFAAdapter;
 import de.learnlib.sba.config.TTTPCDFAAdapter;
+import de.learnlib.sba.impl.CounterexampleShortener;
 import de.learnlib.sba.impl.DefaultATProvider;
+import de.learnlib.sba.impl.LatencyCostModel;
+import de.learnlib.sba.impl.MismatchAnalyzers;
+import de.learnlib.sba.impl.NormalizingCacheOracle;
 import de.learnlib.sba.impl.OptimizingATProvider;
+import de.learnlib.sba.impl.SnapshotATProvider;
+import de.learnlib.sba.impl.StackSBA;
 import de.learnlib.sba.impl.SymbolWrapper;
 import de.learnlib.sba.learner.SBALearner;
+import de.learnlib.sba.util.ATSequences;
+import de.learnlib.sba.util.CharacterizingSetEQOracle;
+import de.learnlib.sba.util.CharacterizingTests;
+import de.learnlib.sba.util.IncrementalSimulatorEQOracle;
 import de.learnlib.sba.util.KeylockSBAs;
 import de.learnlib.sba.util.RandomSBAs;
+import de.learnlib.sba.util.RandomWalkSBAEQOracle;
+import de.learnlib.sba.util.SBASimulatorOracle;
 import de.learnlib.sba.util.SBAUtil;
+import de.learnlib.sba.util.SBAWordSampler;
 import de.learnlib.sba.util.SimulatorEQOracle;
+import de.learnlib.sba.util.WpMethodSBAEQOracle;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.util.automata.builders.AutomatonBuilders;
+import net.automatalib.util.automata.fsa.MutableDFAs;
 import net.automatalib.words.SPAAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
 import net.automatalib.words.impl.Alphabets;
 import net.automatalib.words.impl.DefaultSPAAlphabet;
 import org.testng.Assert;
@@ -71,9 +104,11 @@ public class LearnerTest {
 
         final List<SBA<?, Integer>> systems = Arrays.asList(complete, partial, keylock);
         final List<Function<SPAAlphabet<I>, ATProvider<I>>> atProviders =
-                Arrays.asList(new DefaultSetup<>(), new OptimizingSetup<>());
+                Arrays.asList(new DefaultSetup<>(), new OptimizingSetup<>(), new SnapshotSetup<>());
         final List<Function<SBA<?, I>, EquivalenceOracle<? super SBA<?, I>, I, Boolean>>> eqProviders =
-                Arrays.asList(new SimulatorProvider<>(), new CharacterizingProvider<>());
+                Arrays.asList(new SimulatorProvider<>(),
+                              new CharacterizingProvider<>(),
+                              new ParallelCharacterizingProvider<>());
 
         final List<Object[]> result = new ArrayList<>(systems.size() * atProviders.size() * eqProviders.size());
 
@@ -138,16 +173,525 @@ public class LearnerTest {
                      eqProvider);
     }
 
+    @DataProvider(name = "analyzerProvider")
+    public Object[][] analyzerProvider() {
+        return new Object[][] {{MismatchAnalyzers.LINEAR_FWD},
+                               {MismatchAnalyzers.LINEAR_BWD},
+                               {MismatchAnalyzers.BINARY_SEARCH},
+                               {MismatchAnalyzers.EXPONENTIAL_FWD},
+                               {MismatchAnalyzers.EXPONENTIAL_BWD},
+                               {MismatchAnalyzers.batched(4)}};
+    }
+
+    @Test(dataProvider = "analyzerProvider")
+    public void testAnalyzer(MismatchAnalyzer analyzer) {
+        for (int length = 1; length < 20; length++) {
+            for (int mismatch = 0; mismatch < length; mismatch++) {
+                final int m = mismatch;
+                Assert.assertEquals(analyzer.analyze(l -> l <= m, 0, length), mismatch);
+            }
+        }
+
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            learningLoop(sba,
+                         (LearnerProvider<SymbolWrapper<Integer>, TTTDFAAdapter<SymbolWrapper<Integer>>>) TTTDFAAdapter::new,
+                         new OptimizingSetup<>(),
+                         new CharacterizingProvider<>(),
+                         analyzer);
+        }
+    }
+
+    @Test
+    public void testParallelRefinement() {
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final SBALearner<Integer, ?> learner = new SBALearner<>(alphabet,
+                                                                    new SBASimulatorOracle<>(sba),
+                                                                    (LearnerProvider<SymbolWrapper<Integer>, TTTDFAAdapter<SymbolWrapper<Integer>>>) TTTDFAAdapter::new,
+                                                                    new OptimizingATProvider<>(alphabet),
+                                                                    MismatchAnalyzers.BINARY_SEARCH,
+                                                                    ForkJoinPool.commonPool(),
+                                                                    16,
+                                                                    1,
+                                                                    false);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> eqOracle =
+                    new SimulatorEQOracle<>(sba, ForkJoinPool.commonPool(), true);
+            final List<Word<Integer>> testWords = SBAUtil.characterizingSet(sba, alphabet);
+
+            learner.startLearning();
+
+            while (true) {
+                final SBA<?, Integer> hyp = learner.getHypothesisModel();
+                final List<DefaultQuery<Integer, Boolean>> ces = new ArrayList<>();
+
+                for (Word<Integer> w : testWords) {
+                    final boolean output = sba.accepts(w);
+                    if (hyp.accepts(w) != output) {
+                        ces.add(new DefaultQuery<>(w, output));
+                    }
+                }
+
+                if (ces.isEmpty()) {
+                    final DefaultQuery<Integer, Boolean> ce = eqOracle.findCounterExample(hyp, alphabet);
+                    if (ce == null) {
+                        break;
+                    }
+                    ces.add(ce);
+                }
+
+                Assert.assertTrue(learner.refineHypothesis(ces));
+            }
+
+            Assert.assertTrue(SBAUtil.testEquivalence(sba, learner.getHypothesisModel(), alphabet));
+        }
+    }
+
+    @Test
+    public void testNormalizingCache() {
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATProvider<Integer> atProvider = new OptimizingATProvider<>(alphabet);
+            final List<Word<Integer>> testWords = SBAUtil.characterizingSet(sba, alphabet);
+
+            for (Word<Integer> w : testWords) {
+                if (!w.isEmpty() && sba.accepts(w)) {
+                    atProvider.scanPositiveCounterexample(w);
+                }
+            }
+
+            final MembershipOracle<Integer, Boolean> simulator = new SBASimulatorOracle<>(sba);
+            final AtomicLong delegateQueries = new AtomicLong();
+            final MembershipOracle<Integer, Boolean> oracle =
+                    new NormalizingCacheOracle<>(alphabet, queries -> {
+                        delegateQueries.addAndGet(queries.size());
+                        simulator.processQueries(queries);
+                    }, atProvider);
+
+            // the second iteration is answered from the cache
+            for (int i = 0; i < 2; i++) {
+                final List<DefaultQuery<Integer, Boolean>> queries = new ArrayList<>(testWords.size());
+                for (Word<Integer> w : testWords) {
+                    queries.add(new DefaultQuery<>(w));
+                }
+
+                oracle.processQueries(queries);
+
+                // a miss only forwards the original query
+                Assert.assertTrue(delegateQueries.get() <= testWords.size());
+
+                for (DefaultQuery<Integer, Boolean> q : queries) {
+                    Assert.assertEquals(q.getOutput(), (Boolean) sba.accepts(q.getInput()), q.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotProvider() {
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATProvider<Integer> delegate = new OptimizingATProvider<>(alphabet);
+            final SnapshotATProvider<Integer> atProvider = new SnapshotATProvider<>(alphabet, delegate);
+            final List<Long> versions = new ArrayList<>();
+
+            atProvider.addChangeListener((version, as, ts) -> {
+                Assert.assertFalse(as.isEmpty() && ts.isEmpty());
+                versions.add(version);
+            });
+
+            for (Word<Integer> w : SBAUtil.characterizingSet(sba, alphabet)) {
+                if (w.isEmpty() || !sba.accepts(w)) {
+                    continue;
+                }
+
+                final long version = atProvider.getVersion();
+                final Set<Integer> newTerms = atProvider.scanPositiveCounterexample(w).getSecond();
+
+                if (versions.isEmpty() || versions.get(versions.size() - 1) == version) {
+                    Assert.assertTrue(newTerms.isEmpty());
+                } else {
+                    Assert.assertEquals(atProvider.getVersion(), versions.get(versions.size() - 1).longValue());
+                    Assert.assertTrue(atProvider.getVersion() > version);
+                }
+
+                for (Integer p : alphabet.getCallAlphabet()) {
+                    Assert.assertEquals(atProvider.hasTerminatingSequence(p), delegate.hasTerminatingSequence(p));
+                    if (delegate.hasTerminatingSequence(p)) {
+                        Assert.assertSame(atProvider.getTerminatingSequence(p), delegate.getTerminatingSequence(p));
+                    }
+                }
+            }
+
+            Assert.assertFalse(versions.isEmpty());
+
+            // a snapshot of an already populated delegate starts with the delegate's sequences
+            final SnapshotATProvider<Integer> copy = new SnapshotATProvider<>(alphabet, delegate);
+            for (Integer p : alphabet.getCallAlphabet()) {
+                Assert.assertEquals(copy.hasAccessSequence(p), delegate.hasAccessSequence(p));
+                Assert.assertEquals(copy.hasTerminatingSequence(p), delegate.hasTerminatingSequence(p));
+                if (delegate.hasAccessSequence(p)) {
+                    Assert.assertSame(copy.getAccessSequence(p), delegate.getAccessSequence(p));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testATSequences() {
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATSequences<Integer> ats = SBAUtil.computeATSequences(sba, alphabet);
+
+            Assert.assertFalse(ats.accessSequences.isEmpty());
+            Assert.assertFalse(ats.terminatingSequences.isEmpty());
+
+            for (Integer procedure : alphabet.getCallAlphabet()) {
+                final Word<Integer> as = ats.accessSequences.get(procedure);
+                final Word<Integer> ts = ats.terminatingSequences.get(procedure);
+
+                if (as != null) {
+                    Assert.assertTrue(sba.accepts(as));
+                    if (ts != null) {
+                        final Word<Integer> r = Word.fromLetter(alphabet.getReturnSymbol());
+                        Assert.assertTrue(sba.accepts(Word.fromWords(as, ts, r)));
+                    }
+                }
+            }
+
+            // the sequences of a fixed system can be re-used
+            Assert.assertNull(SBAUtil.findSeparatingWord(sba, ats, sba, ats, alphabet));
+            Assert.assertEquals(SBAUtil.characterizingSet(sba, alphabet, ats), SBAUtil.characterizingSet(sba, alphabet));
+        }
+    }
+
+    @Test
+    public void testCharacterizingTests() {
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATSequences<Integer> ats = SBAUtil.computeATSequences(sba, alphabet);
+            final List<Word<Integer>> expected = eagerCharacterizingSet(sba, alphabet, ats);
+            final CharacterizingTests<Integer> tests = SBAUtil.characterizingTests(sba, alphabet, ats);
+
+            Assert.assertEquals(tests.size(), expected.size());
+            Assert.assertEquals(tests.stream().collect(Collectors.toList()), expected);
+            Assert.assertEquals(StreamSupport.stream(tests.spliterator(), true).collect(Collectors.toList()),
+                                expected);
+
+            // chunks can be consumed independently
+            final long mid = tests.size() / 3;
+            final List<Word<Integer>> chunks = new ArrayList<>();
+            tests.stream(0, mid).forEach(chunks::add);
+            tests.stream(mid, tests.size()).forEach(chunks::add);
+            Assert.assertEquals(chunks, expected);
+
+            for (int i = 0; i < expected.size(); i += 97) {
+                Assert.assertEquals(tests.get(i), expected.get(i));
+            }
+
+            Assert.assertEquals(SBAUtil.characterizingSet(sba, alphabet, ats), expected);
+        }
+    }
+
+    /**
+     * The (eager) construction of the characterizing set that the lazy {@link CharacterizingTests} replace.
+     */
+    private static <I> List<Word<I>> eagerCharacterizingSet(SBA<?, I> sul,
+                                                            SPAAlphabet<I> alphabet,
+                                                            ATSequences<I> ats) {
+
+        final List<Word<I>> tests = new ArrayList<>();
+
+        final Set<I> eligibleInputs = new HashSet<>(ats.terminatingSequences.keySet());
+        eligibleInputs.addAll(alphabet.getInternalAlphabet());
+
+        for (Entry<I, DFA<?, I>> e : sul.getProcedures().entrySet()) {
+            final Word<I> as = ats.accessSequences.get(e.getKey());
+            final DFA<?, I> dfa = e.getValue();
+
+            final List<Word<I>> sCov = Automata.stateCover(dfa, eligibleInputs);
+            final List<Word<I>> cSet = Automata.characterizingSet(dfa, alphabet);
+
+            for (Word<I> c : sCov) {
+                for (I i : alphabet) {
+                    if (!alphabet.isCallSymbol(i) || ats.terminatingSequences.containsKey(i)) {
+                        final Word<I> ts = c.append(i);
+                        for (Word<I> cs : cSet) {
+                            tests.add(as.concat(alphabet.expand(ts.concat(cs), ats.terminatingSequences::get)));
+                        }
+                    } else {
+                        tests.add(as.concat(alphabet.expand(c, ats.terminatingSequences::get)).append(i));
+                    }
+                }
+            }
+        }
+
+        return tests;
+    }
+
+    @Test
+    public void testParallelEQOracle() {
+        // the first counterexample of the test suite is found, regardless of scheduling (and caching)
+        final int ces = compareOracles(characterizingOracle(null), characterizingOracle(ForkJoinPool.commonPool()));
+        Assert.assertTrue(ces > 0);
+    }
+
+    @Test
+    public void testIncrementalEQOracle() {
+        // skipping verified procedures must not affect the result
+        final int ces = compareOracles((sba, atProvider) -> new SimulatorEQOracle<>(sba),
+                                       (sba, atProvider) -> new IncrementalSimulatorEQOracle<>(sba));
+        Assert.assertTrue(ces > 0);
+    }
+
+    @Test
+    public void testRandomWalkEQOracle() {
+        // the same seed yields the same counterexamples, regardless of the number of workers
+        final int ces = compareOracles(randomWalkOracle(null), randomWalkOracle(ForkJoinPool.commonPool()));
+        Assert.assertTrue(ces > 0);
+    }
+
+    @Test
+    public void testWpMethodEQOracle() {
+        final int ces = compareOracles(wpMethodOracle(0, null), wpMethodOracle(0, ForkJoinPool.commonPool()));
+        Assert.assertTrue(ces > 0);
+
+        // an equivalent hypothesis passes the suite, regardless of the lookahead
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final ATProvider<Integer> atProvider = new OptimizingATProvider<>(sba.getInputAlphabet());
+            final List<SBA<?, Integer>> hypotheses = learnHypotheses(sba, atProvider);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> lookahead =
+                    wpMethodOracle(1, ForkJoinPool.commonPool()).apply(sba, atProvider);
+            Assert.assertNull(lookahead.findCounterExample(hypotheses.get(hypotheses.size() - 1),
+                                                           sba.getInputAlphabet()));
+        }
+    }
+
+    @Test
+    public void testWpMethodReturnTransitions() {
+        final SPAAlphabet<Character> alphabet =
+                new DefaultSPAAlphabet<>(Alphabets.characters('a', 'b'), Alphabets.singleton('S'), 'R');
+        final SBA<?, Character> hyp =
+                new StackSBA<>(alphabet, 'S', Collections.singletonMap('S', buildReturnProcedure(alphabet, true)));
+        final SBA<?, Character> sul =
+                new StackSBA<>(alphabet, 'S', Collections.singletonMap('S', buildReturnProcedure(alphabet, false)));
+
+        final ATProvider<Character> atProvider = new OptimizingATProvider<>(alphabet);
+        atProvider.scanPositiveCounterexample(Word.fromCharSequence("SR"));
+
+        // the states of the hypothesis are distinguished by internal symbols only, so only the transition cover
+        // reveals the rejected return
+        final EquivalenceOracle<SBA<?, Character>, Character, Boolean> oracle =
+                new WpMethodSBAEQOracle<>(new SBASimulatorOracle<>(sul), atProvider, 0, null, 64);
+        final DefaultQuery<Character, Boolean> ce = oracle.findCounterExample(hyp, alphabet);
+
+        Assert.assertNotNull(ce);
+        Assert.assertEquals(ce.getOutput(), (Boolean) sul.accepts(ce.getInput()));
+        Assert.assertNotEquals(ce.getOutput(), (Boolean) hyp.accepts(ce.getInput()));
+    }
+
+    @Test
+    public void testWordSampler() {
+        final Random random = new Random(42);
+
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final SBAWordSampler<Integer> sampler = new SBAWordSampler<>(sba, 50);
+
+            // the language is prefix-closed, so the accepted words can be enumerated by extending accepted words
+            List<Word<Integer>> accepted = Collections.singletonList(Word.epsilon());
+
+            for (int n = 0; n <= 5; n++) {
+                Assert.assertEquals(sampler.count(n), BigInteger.valueOf(accepted.size()));
+
+                // each accepted word is drawn about equally often
+                if (n == 3) {
+                    final int expected = 100;
+                    final Map<Word<Integer>, Integer> frequencies = new HashMap<>();
+                    for (int i = 0; i < expected * accepted.size(); i++) {
+                        frequencies.merge(sampler.sample(n, random), 1, Integer::sum);
+                    }
+
+                    Assert.assertEquals(frequencies.keySet(), new HashSet<>(accepted));
+                    for (int f : frequencies.values()) {
+                        Assert.assertTrue(f > expected / 2 && f < expected * 3 / 2, Integer.toString(f));
+                    }
+                }
+
+                final List<Word<Integer>> next = new ArrayList<>();
+                for (Word<Integer> w : accepted) {
+                    for (Integer sym : alphabet) {
+                        final Word<Integer> ext = w.append(sym);
+                        if (sba.accepts(ext)) {
+                            next.add(ext);
+                        }
+                    }
+                }
+                accepted = next;
+            }
+
+            for (int n : Arrays.asList(1, 5, 20, 50)) {
+                for (int i = 0; i < 100; i++) {
+                    final Word<Integer> sample = sampler.sample(n, random);
+                    Assert.assertNotNull(sample);
+                    Assert.assertEquals(sample.length(), n);
+                    Assert.assertTrue(sba.accepts(sample));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCounterexampleShortener() {
+        int shortened = 0;
+        long shorteningQueries = 0;
+
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATProvider<Integer> atProvider = new OptimizingATProvider<>(alphabet);
+            final List<SBA<?, Integer>> hypotheses = learnHypotheses(sba, atProvider);
+            final MembershipOracle<Integer, Boolean> mqOracle = new SBASimulatorOracle<>(sba);
+            final CounterexampleShortener<Integer> shortener =
+                    new CounterexampleShortener<>(alphabet, mqOracle, atProvider);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> randomWalk =
+                    new RandomWalkSBAEQOracle<>(mqOracle, atProvider, 20, 50, 1000, 42, null, 64);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> simulator = new SimulatorEQOracle<>(sba);
+
+            for (SBA<?, Integer> hyp : hypotheses) {
+                final DefaultQuery<Integer, Boolean> ce = findCounterExample(hyp, alphabet, randomWalk, simulator);
+
+                if (ce == null) {
+                    continue;
+                }
+
+                final DefaultQuery<Integer, Boolean> shortCE = shortener.shorten(hyp, ce);
+
+                Assert.assertTrue(shortCE.getInput().length() <= ce.getInput().length());
+                Assert.assertEquals(shortCE.getOutput(), (Boolean) sba.accepts(shortCE.getInput()));
+                Assert.assertNotEquals(shortCE.getOutput(), (Boolean) hyp.accepts(shortCE.getInput()));
+
+                if (shortCE.getInput().length() < ce.getInput().length()) {
+                    shortened++;
+                }
+            }
+
+            // the learner shortens the counterexamples itself and counts the verification queries separately
+            final SBALearner<Integer, ?> learner = new SBALearner<>(alphabet,
+                                                                    mqOracle,
+                                                                    (LearnerProvider<SymbolWrapper<Integer>, TTTDFAAdapter<SymbolWrapper<Integer>>>) TTTDFAAdapter::new,
+                                                                    new OptimizingATProvider<>(alphabet),
+                                                                    MismatchAnalyzers.BINARY_SEARCH,
+                                                                    null,
+                                                                    1,
+                                                                    0,
+                                                                    true);
+            learner.startLearning();
+
+            DefaultQuery<Integer, Boolean> ce;
+            while ((ce = simulator.findCounterExample(learner.getHypothesisModel(), alphabet)) != null) {
+                Assert.assertTrue(learner.refineHypothesis(ce));
+            }
+
+            Assert.assertTrue(SBAUtil.testEquivalence(sba, learner.getHypothesisModel(), alphabet));
+            shorteningQueries += learner.getShorteningQueries();
+        }
+
+        Assert.assertTrue(shortened > 0);
+        Assert.assertTrue(shorteningQueries > 0);
+    }
+
+    @Test
+    public void testSeparatingWord() {
+        final List<SBA<?, Integer>> systems = Arrays.asList(complete, partial, keylock);
+        final SPAAlphabet<Integer> alphabet = complete.getInputAlphabet();
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        for (SBA<?, Integer> sba1 : systems) {
+            for (SBA<?, Integer> sba2 : systems) {
+                final ATSequences<Integer> at1 = SBAUtil.computeATSequences(sba1, alphabet);
+                final ATSequences<Integer> at2 = SBAUtil.computeATSequences(sba2, alphabet);
+
+                final Word<Integer> first = SBAUtil.findSeparatingWord(sba1, sba2, alphabet);
+                final Word<Integer> shortest = SBAUtil.findSeparatingWord(sba1, at1, sba2, at2, alphabet, null, true);
+
+                // parallel checks must not affect the result
+                Assert.assertEquals(SBAUtil.findSeparatingWord(sba1, at1, sba2, at2, alphabet, pool, false), first);
+                Assert.assertEquals(SBAUtil.findSeparatingWord(sba1, at1, sba2, at2, alphabet, pool, true), shortest);
+
+                if (sba1 == sba2) {
+                    Assert.assertNull(first);
+                    Assert.assertNull(shortest);
+                } else {
+                    Assert.assertNotNull(first);
+                    Assert.assertNotNull(shortest);
+                    Assert.assertTrue(shortest.length() <= first.length());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCostModel() {
+        final SPAAlphabet<Integer> alphabet = complete.getInputAlphabet();
+        final LatencyCostModel<Integer> costModel =
+                new LatencyCostModel<>(alphabet, new SBASimulatorOracle<>(complete));
+        final Random random = new Random(42);
+
+        // symbol 10 is a hundred times more expensive than all other symbols
+        for (int n = 0; n < 5000; n++) {
+            final List<DefaultQuery<Integer, Boolean>> batch = new ArrayList<>();
+            long latency = 0;
+
+            for (int q = random.nextInt(3); q >= 0; q--) {
+                final WordBuilder<Integer> wb = new WordBuilder<>();
+                latency += 1000;
+                for (int i = random.nextInt(20); i >= 0; i--) {
+                    final Integer sym = alphabet.getSymbol(random.nextInt(alphabet.size()));
+                    wb.append(sym);
+                    latency += sym == 10 ? 10_000 : 100;
+                }
+                batch.add(new DefaultQuery<>(wb.toWord()));
+            }
+
+            costModel.observe(batch, latency);
+        }
+
+        Assert.assertEquals(costModel.applyAsDouble(10), 10_000, 100);
+        Assert.assertEquals(costModel.applyAsDouble(11), 100, 10);
+        Assert.assertEquals(costModel.getQueryOverhead(), 1000, 50);
+
+        final Word<Integer> expensiveTS = Word.fromSymbols(0, 10, 26);
+        final Word<Integer> cheapTS = Word.fromSymbols(0, 11, 11, 26);
+
+        final ATProvider<Integer> lengthProvider = new OptimizingATProvider<>(alphabet);
+        final ATProvider<Integer> costProvider = new OptimizingATProvider<>(alphabet, costModel);
+
+        for (ATProvider<Integer> provider : Arrays.asList(lengthProvider, costProvider)) {
+            provider.scanPositiveCounterexample(expensiveTS);
+            provider.scanPositiveCounterexample(cheapTS);
+        }
+
+        Assert.assertEquals(lengthProvider.getTerminatingSequence(0), Word.fromSymbols(10));
+        Assert.assertEquals(costProvider.getTerminatingSequence(0), Word.fromSymbols(11, 11));
+    }
+
     private <I, L extends ProceduralLearner<SymbolWrapper<I>>> void learningLoop(SBA<?, I> system,
                                                                                  LearnerProvider<SymbolWrapper<I>, L> adapter,
                                                                                  Function<SPAAlphabet<I>, ATProvider<I>> atProvider,
                                                                                  Function<SBA<?, I>, EquivalenceOracle<? super SBA<?, I>, I, Boolean>> eqProvider) {
+        learningLoop(system, adapter, atProvider, eqProvider, MismatchAnalyzers.BINARY_SEARCH);
+    }
+
+    private <I, L extends ProceduralLearner<SymbolWrapper<I>>> void learningLoop(SBA<?, I> system,
+                                                                                 LearnerProvider<SymbolWrapper<I>, L> adapter,
+                                                                                 Function<SPAAlphabet<I>, ATProvider<I>> atProvider,
+                                                                                 Function<SBA<?, I>, EquivalenceOracle<? super SBA<?, I>, I, Boolean>> eqProvider,
+                                                                                 MismatchAnalyzer analyzer) {
 
         final SPAAlphabet<I> alphabet = system.getInputAlphabet();
-        final MembershipOracle<I, Boolean> mqOracle = new SimulatorOracle<>(system);
+        final MembershipOracle<I, Boolean> mqOracle = new SBASimulatorOracle<>(system);
         final EquivalenceOracle<? super SBA<?, I>, I, Boolean> eqOracle = eqProvider.apply(system);
 
-        final SBALearner<I, ?> learner = new SBALearner<>(alphabet, mqOracle, adapter, atProvider.apply(alphabet));
+        final SBALearner<I, ?> learner = new SBALearner<>(alphabet, mqOracle, adapter, atProvider.apply(alphabet), analyzer);
 
         learner.startLearning();
 
@@ -161,13 +705,138 @@ public class LearnerTest {
             }
 
             Assert.assertTrue(refined);
+            // hypotheses are immutable snapshots, so the previous one should still expose the counterexample
+            Assert.assertNotEquals(hyp.computeOutput(ce.getInput()), ce.getOutput());
             hyp = learner.getHypothesisModel();
+            Assert.assertSame(learner.getHypothesisModel(), hyp);
         }
 
         Assert.assertEquals(system.size(), hyp.size());
         Assert.assertTrue(SBAUtil.testEquivalence(system, hyp, alphabet));
     }
 
+    private static DFA<?, Character> buildReturnProcedure(SPAAlphabet<Character> alphabet, boolean returnFromS1) {
+        // @formatter:off
+        final CompactDFA<Character> dfa = AutomatonBuilders.forDFA(new CompactDFA<>(alphabet))
+                                                           .withInitial("s0")
+                                                           .from("s0").on('a').to("s1")
+                                                           .from("s0").on('b').to("s0")
+                                                           .from("s0").on('R').to("s2")
+                                                           .from("s1").on('b').to("s0")
+                                                           .from("s1").on('R').to(returnFromS1 ? "s2" : "s3")
+                                                           .withAccepting("s0", "s1", "s2")
+                                                           .create();
+        // @formatter:on
+        MutableDFAs.complete(dfa, alphabet, true);
+        return dfa;
+    }
+
+    /**
+     * Learns each system and checks on every intermediate hypothesis that the given oracle yields the same
+     * counterexample as the reference oracle. Each hypothesis is checked twice by both oracles, so stateful oracles
+     * (e.g. caching or seeded ones) are compared on the same sequence of calls. Both oracles are created from the
+     * system and a provider that contains the sequences of all procedures of the hypotheses.
+     *
+     * @return the total number of counterexamples found by the reference oracle
+     */
+    private int compareOracles(OracleFactory reference, OracleFactory oracle) {
+        int result = 0;
+
+        for (SBA<?, Integer> sba : Arrays.asList(complete, partial, keylock)) {
+            final SPAAlphabet<Integer> alphabet = sba.getInputAlphabet();
+            final ATProvider<Integer> atProvider = new OptimizingATProvider<>(alphabet);
+            final List<SBA<?, Integer>> hypotheses = learnHypotheses(sba, atProvider);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> expected = reference.apply(sba, atProvider);
+            final EquivalenceOracle<SBA<?, Integer>, Integer, Boolean> actual = oracle.apply(sba, atProvider);
+
+            for (SBA<?, Integer> hyp : hypotheses) {
+                for (int i = 0; i < 2; i++) {
+                    final DefaultQuery<Integer, Boolean> ce = expected.findCounterExample(hyp, alphabet);
+
+                    Assert.assertEquals(actual.findCounterExample(hyp, alphabet), ce);
+
+                    if (ce != null) {
+                        Assert.assertEquals(ce.getOutput(), (Boolean) sba.accepts(ce.getInput()));
+                        Assert.assertNotEquals(ce.getOutput(), (Boolean) hyp.accepts(ce.getInput()));
+                        result++;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the intermediate hypotheses of learning the given system with a simulator, from the initial hypothesis
+     * to an equivalent one.
+     */
+    private static <I> List<SBA<?, I>> learnHypotheses(SBA<?, I> system, ATProvider<I> atProvider) {
+        final SPAAlphabet<I> alphabet = system.getInputAlphabet();
+        final EquivalenceOracle<SBA<?, I>, I, Boolean> eqOracle = new SimulatorEQOracle<>(system);
+        final SBALearner<I, ?> learner = new SBALearner<>(alphabet,
+                                                          new SBASimulatorOracle<>(system),
+                                                          (LearnerProvider<SymbolWrapper<I>, TTTDFAAdapter<SymbolWrapper<I>>>) TTTDFAAdapter::new,
+                                                          atProvider);
+        final List<SBA<?, I>> result = new ArrayList<>();
+
+        learner.startLearning();
+        result.add(learner.getHypothesisModel());
+
+        DefaultQuery<I, Boolean> ce;
+        while ((ce = eqOracle.findCounterExample(learner.getHypothesisModel(), alphabet)) != null) {
+            Assert.assertTrue(learner.refineHypothesis(ce));
+            result.add(learner.getHypothesisModel());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the first counterexample of the given oracles, or {@code null} if none of them finds one.
+     */
+    @SafeVarargs
+    private static <I> DefaultQuery<I, Boolean> findCounterExample(SBA<?, I> hyp,
+                                                                   SPAAlphabet<I> alphabet,
+                                                                   EquivalenceOracle<SBA<?, I>, I, Boolean>... oracles) {
+        for (EquivalenceOracle<SBA<?, I>, I, Boolean> oracle : oracles) {
+            final DefaultQuery<I, Boolean> ce = oracle.findCounterExample(hyp, alphabet);
+            if (ce != null) {
+                return ce;
+            }
+        }
+        return null;
+    }
+
+    private static OracleFactory characterizingOracle(ForkJoinPool pool) {
+        return (sba, atProvider) -> {
+            final CharacterizingTests<Integer> tests = SBAUtil.characterizingTests(sba, sba.getInputAlphabet());
+            return new CharacterizingSetEQOracle<>(new SBASimulatorOracle<>(sba), tests, pool, 16);
+        };
+    }
+
+    private static OracleFactory randomWalkOracle(ForkJoinPool pool) {
+        return (sba, atProvider) -> new RandomWalkSBAEQOracle<>(new SBASimulatorOracle<>(sba),
+                                                                atProvider,
+                                                                0,
+                                                                20,
+                                                                1000,
+                                                                42,
+                                                                pool,
+                                                                64);
+    }
+
+    private static OracleFactory wpMethodOracle(int lookahead, ForkJoinPool pool) {
+        return (sba, atProvider) -> new WpMethodSBAEQOracle<>(new SBASimulatorOracle<>(sba),
+                                                              atProvider,
+                                                              lookahead,
+                                                              pool,
+                                                              64);
+    }
+
+    private interface OracleFactory extends BiFunction<SBA<?, Integer>, ATProvider<Integer>,
+            EquivalenceOracle<SBA<?, Integer>, Integer, Boolean>> {}
+
     private static class DefaultSetup<I> implements Function<SPAAlphabet<I>, ATProvider<I>> {
 
         @Override
@@ -194,6 +863,19 @@ public class LearnerTest {
         }
     }
 
+    private static class SnapshotSetup<I> implements Function<SPAAlphabet<I>, ATProvider<I>> {
+
+        @Override
+        public ATProvider<I> apply(SPAAlphabet<I> inputAlphabet) {
+            return new SnapshotATProvider<>(inputAlphabet, new OptimizingATProvider<>(inputAlphabet));
+        }
+
+        @Override
+        public String toString() {
+            return "SnapshotATProvider";
+        }
+    }
+
     private static class SimulatorProvider<I>
             implements Function<SBA<?, I>, EquivalenceOracle<? super SBA<?, I>, I, Boolean>> {
 
@@ -224,4 +906,21 @@ public class LearnerTest {
             return "CharacterizingProvider";
         }
     }
+
+    private static class ParallelCharacterizingProvider<I>
+            implements Function<SBA<?, I>, EquivalenceOracle<? super SBA<?, I>, I, Boolean>> {
+
+        @Override
+        public EquivalenceOracle<? super SBA<?, I>, I, Boolean> apply(SBA<?, I> sba) {
+            return new CharacterizingSetEQOracle<>(new SBASimulatorOracle<>(sba),
+                                                   SBAUtil.characterizingTests(sba, sba.getInputAlphabet()),
+                                                   ForkJoinPool.commonPool(),
+                                                   64);
+        }
+
+        @Override
+        public String toString() {
+            return "ParallelCharacterizingProvider";
+        }
+    }
 }